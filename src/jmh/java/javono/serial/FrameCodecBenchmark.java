@@ -0,0 +1,62 @@
+package javono.serial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of binary frames, which every message pays for in binary mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCodecBenchmark {
+
+    @Param({"16", "64", "500"})
+    int payloadSize;
+
+    private Frame frame;
+    private byte[] encoded;
+    private byte[] scratch;
+
+    @Setup
+    public void setup() {
+        byte[] payload = new byte[payloadSize];
+        // Some zeros, so COBS has blocks to split
+        for (int i = 0; i < payload.length; i++) payload[i] = (byte) (i % 37 == 0 ? 0 : i);
+        frame = new Frame(Frame.TYPE_DATA, 1, payload);
+        encoded = frame.encode();
+        scratch = new byte[encoded.length];
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return frame.encode();
+    }
+
+    @Benchmark
+    public Frame decode() {
+        // The trailing delimiter is not part of the frame
+        return Frame.decode(encoded, 0, encoded.length - 1);
+    }
+
+    // The receive path's variant, without allocating
+    @Benchmark
+    public int decodeInPlace() {
+        System.arraycopy(encoded, 0, scratch, 0, encoded.length);
+        return Cobs.decodeInPlace(scratch, 0, encoded.length - 1);
+    }
+}
@@ -0,0 +1,65 @@
+package javono.serial;
+
+import javono.config.SerialConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One line to an in-memory {@link FakeDevice} and its echo back through
+ * {@link JavonoSerialThreaded}: the host stack's round trip without a UART. The latency of a
+ * real link is measured end to end with "javono bench".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackEchoBenchmark {
+
+    @Param({"false", "true"})
+    boolean binary;
+
+    private FakeDevice device;
+    private JavonoSerialThreaded connection;
+    private String message;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        device = FakeDevice.startLoopback("jmh");
+        connection = new JavonoSerialThreaded(device.getHostTransport(), SerialConfig.DEFAULT);
+        connection.open();
+        while (!connection.isHandshakeComplete()) Thread.sleep(1);
+        if (binary) {
+            connection.enableBinaryMode();
+            while (!connection.isBinaryMode()) Thread.sleep(1);
+        }
+        message = "x".repeat(64);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connection.close();
+        device.close();
+    }
+
+    @Benchmark
+    public String echo() throws InterruptedException {
+        connection.write(message);
+        return connection.lines().take();
+    }
+}
@@ -0,0 +1,57 @@
+package javono.serial;
+
+import javono.config.SerialConfig.OverflowPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handing received lines from the reader to a consumer: as bytes through a
+ * {@link MessageStream.MessageHandler}, and as Strings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageStreamBenchmark {
+
+    @Param({"16", "64", "500"})
+    int messageSize;
+
+    private MessageStream<String> stream;
+    private byte[] line;
+
+    @Setup
+    public void setup() {
+        stream = new MessageStream<>("bench", 1 << 16, OverflowPolicy.DROP_OLDEST,
+                (kind, buffer, length) -> new String(buffer, 0, length, StandardCharsets.UTF_8));
+        line = new byte[messageSize];
+        for (int i = 0; i < line.length; i++) line[i] = (byte) ('a' + i % 26);
+    }
+
+    @Benchmark
+    public void offerAndHandle(Blackhole blackhole) throws InterruptedException {
+        stream.offer(MessageStream.KIND_TEXT, line, 0, line.length);
+        stream.poll((kind, buffer, length) -> blackhole.consume(buffer[length - 1]));
+    }
+
+    @Benchmark
+    public String offerAndPoll() throws InterruptedException {
+        stream.offer(MessageStream.KIND_TEXT, line, 0, line.length);
+        return stream.poll();
+    }
+}
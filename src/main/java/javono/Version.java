@@ -0,0 +1,12 @@
+package javono;
+
+/**
+ * The Javono release, shared by the CLI and everything that reports it, e.g. benchmark results.
+ */
+public final class Version {
+
+    public static final String JAVONO_VERSION = "1.0.3";
+
+    private Version() {
+    }
+}
@@ -0,0 +1,29 @@
+package javono.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+
+public class AnalyzerFacade {
+
+    private static final AnalyzerFacade INSTANCE = new AnalyzerFacade();
+    private static final StackUsageAnalyzer stackUsageAnalyzer = new StackUsageAnalyzer();
+    private static final SizeReporter sizeReporter = new SizeReporter();
+
+    private AnalyzerFacade() {
+    }
+
+    public static AnalyzerFacade getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs the post-build checks on the output of idf.py build.
+     *
+     * @param projectDir the generated ESP-IDF project
+     * @throws IllegalStateException if a check fails and the firmware must not be flashed
+     */
+    public void analyzeBuild(File projectDir) throws IOException {
+        sizeReporter.report(projectDir);
+        stackUsageAnalyzer.analyze(projectDir);
+    }
+}
@@ -0,0 +1,83 @@
+package javono.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads function and object symbols from the symbol table of a 32-bit little-endian ELF,
+ * which is what the Xtensa toolchain links for ESP32.
+ */
+class ElfSymbolReader {
+
+    private static final int SHT_SYMTAB = 2;
+    private static final int STT_OBJECT = 1;
+    private static final int STT_FUNC = 2;
+    private static final int SECTION_HEADER_SIZE = 40;
+    private static final int SYMBOL_SIZE = 16;
+
+    /**
+     * Returns every sized function and object symbol in the ELF.
+     *
+     * @param elfFile the linked firmware, e.g. build/ESP32Project.elf
+     * @throws IOException if the file cannot be read or is not a 32-bit little-endian ELF
+     */
+    public List<ElfSymbol> readSymbols(File elfFile) throws IOException {
+        ByteBuffer elf = ByteBuffer.wrap(Files.readAllBytes(elfFile.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        if (elf.limit() < 52 || elf.getInt(0) != 0x464C457F || elf.get(4) != 1 || elf.get(5) != 1) {
+            throw new IOException("Not a 32-bit little-endian ELF file: " + elfFile);
+        }
+
+        int sectionHeaders = elf.getInt(0x20);
+        int sectionCount = Short.toUnsignedInt(elf.getShort(0x30));
+
+        List<ElfSymbol> symbols = new ArrayList<>();
+        for (int i = 0; i < sectionCount; i++) {
+            int header = sectionHeaders + i * SECTION_HEADER_SIZE;
+            if (elf.getInt(header + 4) != SHT_SYMTAB) continue;
+
+            int symbolsOffset = elf.getInt(header + 16);
+            int symbolsSize = elf.getInt(header + 20);
+            int stringTable = sectionHeaders + elf.getInt(header + 24) * SECTION_HEADER_SIZE;
+            int stringsOffset = elf.getInt(stringTable + 16);
+
+            for (int entry = symbolsOffset; entry + SYMBOL_SIZE <= symbolsOffset + symbolsSize; entry += SYMBOL_SIZE) {
+                int type = elf.get(entry + 12) & 0x0F;
+                long size = Integer.toUnsignedLong(elf.getInt(entry + 8));
+                if ((type != STT_FUNC && type != STT_OBJECT) || size == 0) continue;
+
+                String name = readString(elf, stringsOffset + elf.getInt(entry));
+                long address = Integer.toUnsignedLong(elf.getInt(entry + 4));
+                symbols.add(new ElfSymbol(name, address, size, type == STT_FUNC));
+            }
+        }
+        return symbols;
+    }
+
+    private static String readString(ByteBuffer elf, int offset) {
+        int end = offset;
+        while (end < elf.limit() && elf.get(end) != 0) end++;
+        byte[] bytes = new byte[end - offset];
+        elf.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static class ElfSymbol {
+        final String name;
+        final long address;
+        final long size;
+        final boolean function;
+
+        ElfSymbol(String name, long address, long size, boolean function) {
+            this.name = name;
+            this.address = address;
+            this.size = size;
+            this.function = function;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package javono.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Reads the GNU ld map file produced by idf.py build.
+ */
+class MapFileParser {
+
+    // Output sections start in column 0, e.g. ".dram0.bss      0x3ffb0000     0x1f58"
+    private static final Pattern OUTPUT_SECTION = Pattern.compile("^(\\.[\\w.]+)\\s+0x([0-9a-fA-F]+)\\s+0x([0-9a-fA-F]+)");
+    // Long section names are wrapped, the address and size follow on the next line
+    private static final Pattern WRAPPED_SECTION_NAME = Pattern.compile("^(\\.[\\w.]+)\\s*$");
+    private static final Pattern WRAPPED_SECTION_VALUES = Pattern.compile("^\\s+0x([0-9a-fA-F]+)\\s+0x([0-9a-fA-F]+)");
+    // Input sections are indented by one space and name the object they came from, e.g.
+    // " .text.loop     0x400d1234       0x2a esp-idf/main/libmain.a(main.c.obj)"
+    private static final Pattern INPUT_SECTION = Pattern.compile("^ (\\.\\S+|COMMON)\\s+0x([0-9a-fA-F]+)\\s+0x([0-9a-fA-F]+)\\s+(\\S.*)$");
+    private static final Pattern WRAPPED_INPUT_SECTION_NAME = Pattern.compile("^ (\\.\\S+|COMMON)\\s*$");
+    private static final Pattern WRAPPED_INPUT_SECTION_VALUES = Pattern.compile("^\\s+0x([0-9a-fA-F]+)\\s+0x([0-9a-fA-F]+)\\s+(\\S.*)$");
+
+    /**
+     * Finds the map file in an ESP-IDF build directory.
+     *
+     * @param buildDir the project's build directory
+     * @return the map file, or null if the project has not been built
+     */
+    public File findMapFile(File buildDir) throws IOException {
+        if (!buildDir.isDirectory()) return null;
+        try (Stream<Path> files = Files.list(buildDir.toPath())) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".map"))
+                    .findFirst()
+                    .map(Path::toFile)
+                    .orElse(null);
+        }
+    }
+
+    /**
+     * Finds the linked ELF next to the map file.
+     *
+     * @return the ELF file, or null if it does not exist
+     */
+    public File findElfFile(File mapFile) {
+        String name = mapFile.getName();
+        File elf = new File(mapFile.getParentFile(), name.substring(0, name.length() - ".map".length()) + ".elf");
+        return elf.exists() ? elf : null;
+    }
+
+    /**
+     * Returns every non-empty input section placed in an output section, with the object it came from.
+     */
+    public List<InputSection> parseInputSections(File mapFile) throws IOException {
+        List<InputSection> sections = new ArrayList<>();
+        List<String> lines = Files.readAllLines(mapFile.toPath());
+        String outputSection = null;
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.startsWith(".")) {
+                // Column 0 starts a new output section, possibly wrapped onto the next line
+                int end = line.indexOf(' ');
+                outputSection = end < 0 ? line.trim() : line.substring(0, end);
+                continue;
+            }
+            if (outputSection == null) continue;
+
+            Matcher matcher = INPUT_SECTION.matcher(line);
+            if (matcher.find()) {
+                addInputSection(sections, outputSection, matcher.group(1), matcher.group(2), matcher.group(3), matcher.group(4));
+                continue;
+            }
+            Matcher wrapped = WRAPPED_INPUT_SECTION_NAME.matcher(line);
+            if (wrapped.find() && i + 1 < lines.size()) {
+                Matcher values = WRAPPED_INPUT_SECTION_VALUES.matcher(lines.get(i + 1));
+                if (values.find()) {
+                    addInputSection(sections, outputSection, wrapped.group(1), values.group(1), values.group(2), values.group(3));
+                    i++;
+                }
+            }
+        }
+        return sections;
+    }
+
+    private static void addInputSection(List<InputSection> sections, String outputSection, String name, String address, String size, String object) {
+        long bytes = Long.parseLong(size, 16);
+        if (bytes == 0) return;
+        sections.add(new InputSection(outputSection, name, Long.parseLong(address, 16), bytes, object.trim()));
+    }
+
+    /**
+     * Returns the size in bytes of every output section in the map file, in file order.
+     */
+    public Map<String, Long> parseOutputSections(File mapFile) throws IOException {
+        Map<String, Long> sections = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(mapFile.toPath());
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            Matcher matcher = OUTPUT_SECTION.matcher(line);
+            if (matcher.find()) {
+                sections.merge(matcher.group(1), Long.parseLong(matcher.group(3), 16), Long::sum);
+                continue;
+            }
+            Matcher wrapped = WRAPPED_SECTION_NAME.matcher(line);
+            if (wrapped.find() && i + 1 < lines.size()) {
+                Matcher values = WRAPPED_SECTION_VALUES.matcher(lines.get(i + 1));
+                if (values.find()) {
+                    sections.merge(wrapped.group(1), Long.parseLong(values.group(2), 16), Long::sum);
+                    i++;
+                }
+            }
+        }
+        return sections;
+    }
+
+    static class InputSection {
+        final String outputSection;
+        final String name;
+        final long address;
+        final long size;
+        final String object;
+
+        InputSection(String outputSection, String name, long address, long size, String object) {
+            this.outputSection = outputSection;
+            this.name = name;
+            this.address = address;
+            this.size = size;
+            this.object = object;
+        }
+    }
+}
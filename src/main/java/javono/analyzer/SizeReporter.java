@@ -0,0 +1,272 @@
+package javono.analyzer;
+
+import javono.logger.LoggerFacade;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Attributes the flash, IRAM and DRAM used by the firmware to sketch methods, Javono runtime
+ * files and ESP-IDF components, then compares the result with the previous build.
+ * Sections come from the linker map; symbols from the ELF split main.c into sketch methods.
+ */
+class SizeReporter {
+
+    private static final String REPORT_FILE = "size-report.properties";
+    private static final String CALL_GRAPH_FILE = "callgraph.properties";
+    private static final int TOP_COMPONENTS = 10;
+
+    // esp-idf/<component>/lib<component>.a(file.c.obj)
+    private static final Pattern IDF_COMPONENT = Pattern.compile("esp-idf/([^/]+)/lib[^/]*\\.a\\(");
+    // Javono runtime objects in the main component, e.g. libmain.a(Javono_serial.c.obj)
+    private static final Pattern RUNTIME_OBJECT = Pattern.compile("libmain\\.a\\((Javono_\\w+)\\.c\\.obj\\)");
+    private static final Pattern ARCHIVE = Pattern.compile("([^/\\\\]+)\\.a\\(");
+
+    /**
+     * Prints the size report for a built project, stores it in .javono/build and shows what
+     * changed since the previously stored report.
+     *
+     * @param projectDir the generated ESP-IDF project (.javono/ESP32Project)
+     */
+    public void report(File projectDir) throws IOException {
+        MapFileParser parser = new MapFileParser();
+        File mapFile = parser.findMapFile(new File(projectDir, "build"));
+        if (mapFile == null) {
+            LoggerFacade.getInstance().warn("Size report skipped: no .map file in " + new File(projectDir, "build"));
+            return;
+        }
+        File elfFile = parser.findElfFile(mapFile);
+        Path buildDir = projectDir.getParentFile().toPath().resolve("build");
+
+        Set<String> sketchFunctions = readSketchFunctions(buildDir.resolve(CALL_GRAPH_FILE));
+        List<ElfSymbolReader.ElfSymbol> symbols = elfFile != null ? new ElfSymbolReader().readSymbols(elfFile) : List.of();
+        Map<String, long[]> current = attribute(parser.parseInputSections(mapFile), symbols, sketchFunctions);
+
+        Path reportFile = buildDir.resolve(REPORT_FILE);
+        Map<String, long[]> previous = load(reportFile);
+
+        print(current, previous);
+        store(reportFile, current);
+    }
+
+    private Map<String, long[]> attribute(List<MapFileParser.InputSection> sections, List<ElfSymbolReader.ElfSymbol> symbols, Set<String> sketchFunctions) {
+        Map<String, long[]> owners = new TreeMap<>();
+        List<ElfSymbolReader.ElfSymbol> sorted = new ArrayList<>(symbols);
+        sorted.sort(Comparator.comparingLong(symbol -> symbol.address));
+
+        for (MapFileParser.InputSection section : sections) {
+            Region region = Region.of(section.outputSection);
+            if (region == null) continue;
+
+            String owner = ownerOf(section.object);
+            long remaining = section.size;
+            if (owner.equals("runtime/main")) {
+                // Split main.c by symbol so each sketch method gets its own line
+                for (ElfSymbolReader.ElfSymbol symbol : symbolsWithin(sorted, section)) {
+                    if (sketchFunctions.contains(symbol.name)) {
+                        region.add(owners.computeIfAbsent("sketch/" + symbol.name, k -> new long[3]), symbol.size);
+                        remaining -= symbol.size;
+                    }
+                }
+                // Literal pools carry the function name but no symbol of their own
+                String function = section.name.substring(section.name.lastIndexOf('.') + 1);
+                if (section.name.startsWith(".literal.") && sketchFunctions.contains(function)) {
+                    owner = "sketch/" + function;
+                }
+            }
+            if (remaining > 0) {
+                region.add(owners.computeIfAbsent(owner, k -> new long[3]), remaining);
+            }
+        }
+        return owners;
+    }
+
+    private static List<ElfSymbolReader.ElfSymbol> symbolsWithin(List<ElfSymbolReader.ElfSymbol> sorted, MapFileParser.InputSection section) {
+        List<ElfSymbolReader.ElfSymbol> within = new ArrayList<>();
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid).address < section.address) low = mid + 1;
+            else high = mid;
+        }
+        for (int i = low; i < sorted.size() && sorted.get(i).address < section.address + section.size; i++) {
+            within.add(sorted.get(i));
+        }
+        return within;
+    }
+
+    private static String ownerOf(String object) {
+        Matcher runtime = RUNTIME_OBJECT.matcher(object);
+        if (runtime.find()) return "runtime/" + runtime.group(1);
+        if (object.contains("libmain.a(")) return "runtime/main";
+
+        Matcher component = IDF_COMPONENT.matcher(object);
+        if (component.find()) return "idf/" + component.group(1);
+
+        Matcher archive = ARCHIVE.matcher(object);
+        if (archive.find()) return "toolchain/" + archive.group(1);
+        return "other/" + new File(object).getName();
+    }
+
+    private void print(Map<String, long[]> current, Map<String, long[]> previous) {
+        long[] total = new long[3];
+        long[] previousTotal = new long[3];
+        current.values().forEach(sizes -> addTo(total, sizes));
+        previous.values().forEach(sizes -> addTo(previousTotal, sizes));
+
+        LoggerFacade.getInstance().info("----- Javono Size Report -----");
+        LoggerFacade.getInstance().info(String.format("%-32s %10s %10s %10s", "", "Flash", "IRAM", "DRAM"));
+        List<String> components = new ArrayList<>();
+        current.forEach((owner, sizes) -> {
+            if (owner.startsWith("sketch/") || owner.startsWith("runtime/")) {
+                LoggerFacade.getInstance().info(row(owner, sizes));
+            } else {
+                components.add(owner);
+            }
+        });
+
+        components.sort(Comparator.comparingLong((String owner) -> current.get(owner)[0]).reversed());
+        long[] others = new long[3];
+        for (int i = 0; i < components.size(); i++) {
+            if (i < TOP_COMPONENTS) {
+                LoggerFacade.getInstance().info(row(components.get(i), current.get(components.get(i))));
+            } else {
+                addTo(others, current.get(components.get(i)));
+            }
+        }
+        if (components.size() > TOP_COMPONENTS) {
+            LoggerFacade.getInstance().info(row("(" + (components.size() - TOP_COMPONENTS) + " more)", others));
+        }
+        LoggerFacade.getInstance().info(row("Total", total));
+
+        if (!previous.isEmpty()) {
+            Set<String> owners = new TreeSet<>(current.keySet());
+            owners.addAll(previous.keySet());
+            boolean changed = false;
+            for (String owner : owners) {
+                long[] now = current.getOrDefault(owner, new long[3]);
+                long[] before = previous.getOrDefault(owner, new long[3]);
+                if (now[0] != before[0] || now[1] != before[1] || now[2] != before[2]) {
+                    if (!changed) LoggerFacade.getInstance().info("Changes since previous build:");
+                    changed = true;
+                    String line = deltaRow(owner, now, before);
+                    if (now[0] > before[0] || now[1] > before[1] || now[2] > before[2]) {
+                        LoggerFacade.getInstance().warn(line);
+                    } else {
+                        LoggerFacade.getInstance().info(line);
+                    }
+                }
+            }
+            if (changed) {
+                LoggerFacade.getInstance().info(deltaRow("Total", total, previousTotal));
+            } else {
+                LoggerFacade.getInstance().info("No size changes since previous build.");
+            }
+        }
+        LoggerFacade.getInstance().info("------------------------------");
+    }
+
+    private static String row(String owner, long[] sizes) {
+        return String.format("%-32s %10d %10d %10d", owner, sizes[0], sizes[1], sizes[2]);
+    }
+
+    private static String deltaRow(String owner, long[] now, long[] before) {
+        return String.format("%-32s %+10d %+10d %+10d", owner, now[0] - before[0], now[1] - before[1], now[2] - before[2]);
+    }
+
+    private static void addTo(long[] total, long[] sizes) {
+        for (int i = 0; i < total.length; i++) total[i] += sizes[i];
+    }
+
+    private static Set<String> readSketchFunctions(Path callGraphFile) throws IOException {
+        Set<String> functions = new HashSet<>();
+        if (!Files.exists(callGraphFile)) return functions;
+        String value = loadProperties(callGraphFile).getProperty("sketch.functions", "");
+        for (String function : value.split(",")) {
+            if (!function.isBlank()) functions.add(function.trim());
+        }
+        return functions;
+    }
+
+    private static Map<String, long[]> load(Path reportFile) throws IOException {
+        Map<String, long[]> report = new TreeMap<>();
+        if (!Files.exists(reportFile)) return report;
+        Properties properties = loadProperties(reportFile);
+        for (String owner : properties.stringPropertyNames()) {
+            String[] values = properties.getProperty(owner).split(",");
+            if (values.length != 3) continue;
+            report.put(owner, new long[]{Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2])});
+        }
+        return report;
+    }
+
+    private static void store(Path reportFile, Map<String, long[]> report) throws IOException {
+        Properties properties = new Properties();
+        report.forEach((owner, sizes) -> properties.setProperty(owner, sizes[0] + "," + sizes[1] + "," + sizes[2]));
+        Files.createDirectories(reportFile.getParent());
+        try (OutputStream out = Files.newOutputStream(reportFile)) {
+            properties.store(out, "Javono firmware size report: owner=flash,iram,dram bytes");
+        }
+    }
+
+    private static Properties loadProperties(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    /**
+     * Where an output section ends up. Initialized data lives in DRAM but is also stored in flash.
+     */
+    private enum Region {
+        FLASH(true, false, false),
+        IRAM(true, true, false),
+        IRAM_BSS(false, true, false),
+        DRAM_DATA(true, false, true),
+        DRAM_BSS(false, false, true);
+
+        private final boolean flash;
+        private final boolean iram;
+        private final boolean dram;
+
+        Region(boolean flash, boolean iram, boolean dram) {
+            this.flash = flash;
+            this.iram = iram;
+            this.dram = dram;
+        }
+
+        private static Region of(String outputSection) {
+            if (outputSection.startsWith(".iram0.bss")) return IRAM_BSS;
+            if (outputSection.startsWith(".iram0.")) return IRAM;
+            if (outputSection.equals(".dram0.bss") || outputSection.equals(".noinit")) return DRAM_BSS;
+            if (outputSection.startsWith(".dram0.")) return DRAM_DATA;
+            if (outputSection.startsWith(".flash.") && !outputSection.endsWith("_noload")) return FLASH;
+            if (outputSection.equals(".rtc.text") || outputSection.equals(".rtc.data")) return FLASH;
+            return null;
+        }
+
+        private void add(long[] sizes, long bytes) {
+            if (flash) sizes[0] += bytes;
+            if (iram) sizes[1] += bytes;
+            if (dram) sizes[2] += bytes;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package javono.analyzer;
+
+import javono.logger.LoggerFacade;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Bounds the worst-case stack of every FreeRTOS task in the generated firmware.
+ * Javono forbids recursion, so the call graph written by the project generator is a DAG and
+ * the deepest path from a task entry is weighted with the frame sizes GCC reports in its
+ * -fstack-usage (.su) files.
+ * <p>
+ * The generated C also calls libc, FreeRTOS and driver functions. Their .su files, where the
+ * library is built from source at all, only cover their own frame and not what they call, so
+ * each such call is charged a budget from EXTERNAL_CALL_BUDGETS for itself and its callees.
+ * A path through a library function without a budget is reported as a lower bound only.
+ */
+class StackUsageAnalyzer {
+
+    private static final String CALL_GRAPH_FILE = "callgraph.properties";
+    private static final String MAIN_TASK_STACK_KEY = "CONFIG_ESP_MAIN_TASK_STACK_SIZE";
+    private static final long DEFAULT_MAIN_TASK_STACK = 3584;
+    // Room for the FreeRTOS context save area written to the task stack when it is switched out
+    private static final long CONTEXT_SAVE_RESERVE = 512;
+    /**
+     * Stack a call into a library takes, its callees included, for ESP-IDF v5.4 on the ESP32.
+     * These are budgets with headroom, not measurements; newlib's snprintf runs _svfprintf_r,
+     * by far the deepest of them. Keep them in step with the library calls that
+     * ProjectCreator.runtimeCallGraph() lists.
+     */
+    private static final Map<String, Long> EXTERNAL_CALL_BUDGETS = Map.ofEntries(
+            Map.entry("snprintf", 1536L),
+            Map.entry("strtoul", 128L),
+            Map.entry("memcpy", 32L),
+            Map.entry("memcmp", 32L),
+            Map.entry("memchr", 32L),
+            Map.entry("strlen", 32L),
+            Map.entry("xQueueSemaphoreTake", 256L),
+            Map.entry("xQueueGenericSend", 256L),
+            Map.entry("xQueueReceive", 256L),
+            Map.entry("xQueueGenericReset", 192L),
+            Map.entry("xQueueCreateMutex", 256L),
+            Map.entry("xQueueGenericCreate", 256L),
+            Map.entry("xRingbufferCreate", 256L),
+            Map.entry("xRingbufferSend", 320L),
+            Map.entry("xRingbufferSendAcquire", 320L),
+            Map.entry("xRingbufferSendComplete", 320L),
+            Map.entry("xRingbufferReceive", 320L),
+            Map.entry("xRingbufferReceiveUpTo", 320L),
+            Map.entry("vRingbufferReturnItem", 256L),
+            Map.entry("xTaskCreatePinnedToCore", 384L),
+            Map.entry("xTaskDelayUntil", 192L),
+            Map.entry("xTaskGetTickCount", 32L),
+            Map.entry("vTaskDelay", 192L),
+            Map.entry("uxTaskGetStackHighWaterMark", 64L),
+            Map.entry("esp_timer_get_time", 64L),
+            Map.entry("esp_get_free_heap_size", 192L),
+            Map.entry("esp_get_minimum_free_heap_size", 192L),
+            Map.entry("uart_param_config", 384L),
+            Map.entry("uart_set_pin", 384L),
+            Map.entry("uart_driver_install", 512L),
+            Map.entry("uart_get_buffered_data_len", 128L),
+            Map.entry("uart_read_bytes", 448L),
+            Map.entry("uart_write_bytes", 448L),
+            Map.entry("uart_set_baudrate", 256L),
+            Map.entry("uart_flush_input", 320L),
+            Map.entry("uart_wait_tx_done", 320L));
+
+    private final Map<String, Long> frameSizes = new HashMap<>();
+    private final Set<String> dynamicFrames = new HashSet<>();
+    private final Set<String> externalFunctions = new HashSet<>();
+    private final Map<String, Set<String>> callGraph = new LinkedHashMap<>();
+    private final Map<String, StackPath> worstCase = new HashMap<>();
+
+    /**
+     * Analyzes a built project and fails when a task's stack could overflow.
+     *
+     * @param projectDir the generated ESP-IDF project (.javono/ESP32Project)
+     * @throws IOException if the build output cannot be read
+     * @throws IllegalStateException if a task's worst-case stack exceeds its configured size
+     */
+    public void analyze(File projectDir) throws IOException {
+        File callGraphFile = new File(projectDir.getParentFile(), "build/" + CALL_GRAPH_FILE);
+        File buildDir = new File(projectDir, "build");
+        if (!callGraphFile.exists()) {
+            LoggerFacade.getInstance().warn("Stack analysis skipped: " + callGraphFile + " not found. Run `javono build` first.");
+            return;
+        }
+
+        frameSizes.clear();
+        dynamicFrames.clear();
+        externalFunctions.clear();
+        callGraph.clear();
+        worstCase.clear();
+
+        Properties model = loadProperties(callGraphFile.toPath());
+        readCallGraph(model);
+        for (String function : model.getProperty("external.functions", "").split(",")) {
+            if (!function.isBlank()) externalFunctions.add(function.trim());
+        }
+        readStackUsageFiles(buildDir.toPath());
+        if (frameSizes.isEmpty()) {
+            LoggerFacade.getInstance().warn("Stack analysis skipped: no .su files found. Is -fstack-usage enabled in CMakeLists.txt?");
+            return;
+        }
+
+        long mainTaskStack = readMainTaskStackSize(new File(projectDir, "sdkconfig"));
+        List<String> overflows = new ArrayList<>();
+
+        LoggerFacade.getInstance().info("----- Javono Stack Report -----");
+        for (String task : taskNames(model)) {
+            String entry = model.getProperty("task." + task + ".entry");
+            String configured = model.getProperty("task." + task + ".stackSize");
+            long stackSize = configured != null ? Long.parseLong(configured.trim()) : mainTaskStack;
+
+            StackPath path = worstCasePath(entry, new LinkedHashSet<>());
+            // Loop tasks call their body through a function pointer from a generic task wrapper
+            String wrapper = model.getProperty("task." + task + ".wrapper");
+            if (wrapper != null) {
+                path = worstCasePath(wrapper, new LinkedHashSet<>()).then(path);
+            }
+            long required = path.bytes + CONTEXT_SAVE_RESERVE;
+            LoggerFacade.getInstance().info("Task '" + task + "' → worst case " + (path.unbudgeted.isEmpty() ? "" : "at least ")
+                    + path.bytes + " B + " + CONTEXT_SAVE_RESERVE
+                    + " B reserve of " + stackSize + " B (" + String.join(" → ", path.functions) + ")");
+            if (path.dynamic) {
+                LoggerFacade.getInstance().warn("Task '" + task + "' calls functions with dynamic stack frames (alloca/VLA); the bound may be low.");
+            }
+            if (!path.unbudgeted.isEmpty()) {
+                LoggerFacade.getInstance().warn("Task '" + task + "' calls library functions without a stack budget, so this is a lower bound: "
+                        + String.join(", ", path.unbudgeted));
+            }
+            if (required > stackSize) {
+                overflows.add(task + " needs " + required + " B but has " + stackSize + " B");
+            }
+        }
+
+        reportStaticRam(buildDir);
+        LoggerFacade.getInstance().info("-------------------------------");
+
+        if (!overflows.isEmpty()) {
+            overflows.forEach(overflow -> LoggerFacade.getInstance().error("Stack overflow: " + overflow));
+            LoggerFacade.getInstance().error("→ Increase the task stack size (main task: " + MAIN_TASK_STACK_KEY + " in sdkconfig) or reduce call depth.");
+            throw new IllegalStateException("Build failed: worst-case stack usage exceeds the configured task stack.");
+        }
+    }
+
+    private void readCallGraph(Properties model) {
+        for (String key : model.stringPropertyNames()) {
+            if (!key.startsWith("call.")) continue;
+            Set<String> callees = new LinkedHashSet<>();
+            for (String callee : model.getProperty(key).split(",")) {
+                if (!callee.isBlank()) callees.add(callee.trim());
+            }
+            callGraph.put(key.substring("call.".length()), callees);
+        }
+    }
+
+    private static List<String> taskNames(Properties model) {
+        List<String> tasks = new ArrayList<>();
+        for (String key : model.stringPropertyNames()) {
+            if (key.startsWith("task.") && key.endsWith(".entry")) {
+                tasks.add(key.substring("task.".length(), key.length() - ".entry".length()));
+            }
+        }
+        Collections.sort(tasks);
+        return tasks;
+    }
+
+    /**
+     * Parses every .su file in the build tree. Lines look like
+     * "main.c:21:6:loop	48	static" (file:line:column:function, bytes, qualifier).
+     */
+    private void readStackUsageFiles(Path buildDir) throws IOException {
+        if (!Files.isDirectory(buildDir)) return;
+        try (Stream<Path> files = Files.walk(buildDir)) {
+            for (Path su : files.filter(p -> p.toString().endsWith(".su")).toList()) {
+                for (String line : Files.readAllLines(su)) {
+                    String[] columns = line.split("\t");
+                    if (columns.length < 3) continue;
+                    String function = columns[0].substring(columns[0].lastIndexOf(':') + 1);
+                    long bytes = Long.parseLong(columns[1].trim());
+                    frameSizes.merge(function, bytes, Math::max);
+                    if (columns[2].contains("dynamic")) dynamicFrames.add(function);
+                }
+            }
+        }
+    }
+
+    private StackPath worstCasePath(String function, Set<String> onPath) {
+        StackPath cached = worstCase.get(function);
+        if (cached != null) return cached;
+        if (!onPath.add(function)) {
+            throw new IllegalStateException("Build failed: recursive call chain through " + function + " has no stack bound.");
+        }
+
+        if (externalFunctions.contains(function)) {
+            onPath.remove(function);
+            // The budget covers the library's own callees; without one only its frame is known, if that
+            Long budget = EXTERNAL_CALL_BUDGETS.get(function);
+            StackPath path = budget != null
+                    ? new StackPath(budget, List.of(function), false, Set.of())
+                    : new StackPath(frameSizes.getOrDefault(function, 0L), List.of(function), dynamicFrames.contains(function), Set.of(function));
+            worstCase.put(function, path);
+            return path;
+        }
+
+        StackPath deepest = new StackPath(0, List.of(), false, Set.of());
+        Set<String> unbudgeted = new TreeSet<>();
+        for (String callee : callGraph.getOrDefault(function, Collections.emptySet())) {
+            StackPath candidate = worstCasePath(callee, onPath);
+            unbudgeted.addAll(candidate.unbudgeted);
+            if (candidate.bytes > deepest.bytes) deepest = candidate;
+        }
+        onPath.remove(function);
+
+        List<String> functions = new ArrayList<>();
+        functions.add(function);
+        functions.addAll(deepest.functions);
+        boolean dynamic = dynamicFrames.contains(function) || deepest.dynamic;
+        StackPath path = new StackPath(frameSizes.getOrDefault(function, 0L) + deepest.bytes, functions, dynamic, unbudgeted);
+        worstCase.put(function, path);
+        return path;
+    }
+
+    private static long readMainTaskStackSize(File sdkconfig) throws IOException {
+        if (!sdkconfig.exists()) return DEFAULT_MAIN_TASK_STACK;
+        String value = loadProperties(sdkconfig.toPath()).getProperty(MAIN_TASK_STACK_KEY);
+        return value != null ? Long.parseLong(value.trim()) : DEFAULT_MAIN_TASK_STACK;
+    }
+
+    private void reportStaticRam(File buildDir) throws IOException {
+        MapFileParser parser = new MapFileParser();
+        File mapFile = parser.findMapFile(buildDir);
+        if (mapFile == null) {
+            LoggerFacade.getInstance().warn("Static RAM unknown: no .map file in " + buildDir);
+            return;
+        }
+        Map<String, Long> sections = parser.parseOutputSections(mapFile);
+        long data = sections.getOrDefault(".dram0.data", 0L);
+        long bss = sections.getOrDefault(".dram0.bss", 0L);
+        LoggerFacade.getInstance().info("Static RAM → " + (data + bss) + " B (.data " + data + " B, .bss " + bss + " B)");
+    }
+
+    private static Properties loadProperties(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static class StackPath {
+        private final long bytes;
+        private final List<String> functions;
+        private final boolean dynamic;
+        // Library functions reachable from here whose stack use is not fully known
+        private final Set<String> unbudgeted;
+
+        private StackPath(long bytes, List<String> functions, boolean dynamic, Set<String> unbudgeted) {
+            this.bytes = bytes;
+            this.functions = functions;
+            this.dynamic = dynamic;
+            this.unbudgeted = unbudgeted;
+        }
+
+        private StackPath then(StackPath callee) {
+            List<String> joined = new ArrayList<>(functions);
+            joined.addAll(callee.functions);
+            Set<String> unknown = new TreeSet<>(unbudgeted);
+            unknown.addAll(callee.unbudgeted);
+            return new StackPath(bytes + callee.bytes, joined, dynamic || callee.dynamic, unknown);
+        }
+    }
+}
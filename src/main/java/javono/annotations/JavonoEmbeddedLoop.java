@@ -7,7 +7,22 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 
+/**
+ * Marks the sketch method that runs repeatedly after @JavonoEmbeddedInit.
+ * Set either periodMs or rateHz to run it on a fixed schedule; with neither set
+ * the loop runs back to back but still yields to the idle task.
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface JavonoEmbeddedLoop {
+
+    /**
+     * Time between the starts of two iterations, in milliseconds. 0 means free-running.
+     */
+    int periodMs() default 0;
+
+    /**
+     * Iterations per second, as an alternative to periodMs; must divide 1000. 0 means not set.
+     */
+    int rateHz() default 0;
 }
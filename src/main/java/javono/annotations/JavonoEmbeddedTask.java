@@ -0,0 +1,46 @@
+package javono.annotations;
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Marks a sketch method that runs repeatedly in its own FreeRTOS task, next to @JavonoEmbeddedLoop.
+ * Use core to keep compute-heavy work off the core that handles serial I/O.
+ * A field written by one task must not be read or written by another.
+ * <p>
+ * Sketch method bodies are not translated to C yet. The task is created on the device with its
+ * core, priority and stack size, but runs a generated placeholder body; the build warns about it.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface JavonoEmbeddedTask {
+
+    /**
+     * Core to pin the task to (0 or 1), or -1 to let FreeRTOS run it on either core.
+     */
+    int core() default -1;
+
+    /**
+     * FreeRTOS priority, from 1 (same as @JavonoEmbeddedLoop) to 24.
+     */
+    int priority() default 1;
+
+    /**
+     * Task stack size in bytes.
+     */
+    int stackSize() default 4096;
+
+    /**
+     * Time between the starts of two iterations, in milliseconds. 0 means free-running.
+     */
+    int periodMs() default 0;
+
+    /**
+     * Iterations per second, as an alternative to periodMs; must divide 1000. 0 means not set.
+     */
+    int rateHz() default 0;
+}
@@ -15,7 +15,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
 
-@SupportedAnnotationTypes({"javono.annotations.JavonoEmbeddedSketch", "javono.annotations.JavonoEmbeddedInit", "javono.annotations.JavonoEmbeddedLoop", "javono.annotations.JavonoEmbeddedUserMethod"})
+@SupportedAnnotationTypes({"javono.annotations.JavonoEmbeddedSketch", "javono.annotations.JavonoEmbeddedInit", "javono.annotations.JavonoEmbeddedLoop", "javono.annotations.JavonoEmbeddedUserMethod", "javono.annotations.JavonoEmbeddedTask"})
 @SupportedSourceVersion(SourceVersion.RELEASE_21)
 public class AnnotationProcessor extends AbstractProcessor {
 
@@ -95,9 +95,18 @@ public class AnnotationProcessor extends AbstractProcessor {
             for (Element loop : loopMethods) {
                 validateMethodInSketchClass(loop, sketchClass, "@JavonoEmbeddedLoop");
                 validateVoidMethod(loop, "@JavonoEmbeddedLoop");
+                validateLoopSchedule(loop);
                 setLoopFound(true);
             }
 
+            // Validate @JavonoEmbeddedTask methods
+            Set<? extends Element> taskMethods = roundEnv.getElementsAnnotatedWith(JavonoEmbeddedTask.class);
+            for (Element task : taskMethods) {
+                validateMethodInSketchClass(task, sketchClass, "@JavonoEmbeddedTask");
+                validateVoidMethod(task, "@JavonoEmbeddedTask");
+                validateTaskConfiguration(task);
+            }
+
             // Validate @JavonoEmbeddedUserMethod methods are inside sketch class
             Set<? extends Element> customMethods = roundEnv.getElementsAnnotatedWith(JavonoEmbeddedUserMethod.class);
             for (Element custom : customMethods) {
@@ -185,15 +194,53 @@ public class AnnotationProcessor extends AbstractProcessor {
     }
 
 
+    private void validateLoopSchedule(Element loop) {
+        JavonoEmbeddedLoop schedule = loop.getAnnotation(JavonoEmbeddedLoop.class);
+        if (schedule == null) return;
+        validateSchedule(loop, "@JavonoEmbeddedLoop", schedule.periodMs(), schedule.rateHz());
+    }
+
+    private void validateTaskConfiguration(Element task) {
+        JavonoEmbeddedTask config = task.getAnnotation(JavonoEmbeddedTask.class);
+        if (config == null) return;
+        validateSchedule(task, "@JavonoEmbeddedTask", config.periodMs(), config.rateHz());
+
+        if (config.core() < -1 || config.core() > 1) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] @JavonoEmbeddedTask core must be 0, 1, or -1 for no pinning. ESP32 has two cores.", task);
+        }
+        if (config.priority() < 1 || config.priority() > 24) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] @JavonoEmbeddedTask priority must be between 1 and 24.", task);
+        }
+        if (config.stackSize() < 2048) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] @JavonoEmbeddedTask stackSize must be at least 2048 bytes.", task);
+        }
+    }
+
+    private void validateSchedule(Element method, String annotationName, int periodMs, int rateHz) {
+        if (periodMs < 0 || rateHz < 0) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] " + annotationName + " periodMs and rateHz must not be negative.", method);
+        }
+        if (periodMs > 0 && rateHz > 0) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] " + annotationName + " takes either periodMs or rateHz, not both.", method);
+        }
+        if (rateHz > 1000) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] " + annotationName + " rateHz can be at most 1000, the FreeRTOS tick rate of every build profile.", method);
+        } else if (rateHz > 0 && 1000 % rateHz != 0) {
+            // The loop is scheduled in whole milliseconds, so any other rate would silently change
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] " + annotationName + " rateHz must divide 1000 evenly; "
+                    + rateHz + " Hz would run at " + (1000 / Math.round(1000f / rateHz)) + " Hz. Use periodMs or a rate such as 500, 250, 200 or 100.", method);
+        }
+    }
+
     private void validateUnannotatedMethods(TypeElement sketchClass) {
         List<? extends Element> enclosedElements = sketchClass.getEnclosedElements();
 
         for (Element element : enclosedElements) {
             if (element.getKind() == ElementKind.METHOD) {
-                boolean isAnnotated = element.getAnnotation(JavonoEmbeddedLoop.class) != null || element.getAnnotation(JavonoEmbeddedInit.class) != null || element.getAnnotation(JavonoEmbeddedUserMethod.class) != null;
+                boolean isAnnotated = element.getAnnotation(JavonoEmbeddedLoop.class) != null || element.getAnnotation(JavonoEmbeddedInit.class) != null || element.getAnnotation(JavonoEmbeddedUserMethod.class) != null || element.getAnnotation(JavonoEmbeddedTask.class) != null;
 
                 if (!isAnnotated) {
-                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] Every method inside a @JavonoEmbeddedSketch class must be annotated with @JavonoEmbeddedLoop, @JavonoEmbeddedInit, or @JavonoEmbeddedUserMethod.", element);
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "[Javono] Every method inside a @JavonoEmbeddedSketch class must be annotated with @JavonoEmbeddedLoop, @JavonoEmbeddedInit, @JavonoEmbeddedTask, or @JavonoEmbeddedUserMethod.", element);
                 }
             }
         }
@@ -2,9 +2,11 @@ package javono.builder.impl;
 
 import javono.bootstrap.JavonoBootstrap;
 import javono.builder.JavonoBuilder;
+import javono.config.SerialConfig;
 import javono.detector.DetectorFacade;
 import javono.flasher.FlasherFacade;
 import javono.logger.LoggerFacade;
+import javono.probuilder.BuildProfile;
 import javono.probuilder.ProjectBuilderFacade;
 import javono.utils.UtilsFacade;
 import javono.validator.ValidatorFacade;
@@ -18,6 +20,7 @@ import java.util.List;
 public class JavonoLocalBuilder implements JavonoBuilder {
 
     private File projectDir;
+    private BuildProfile buildProfile;
 
     @Override
     public JavonoBuilder build() {
@@ -76,7 +79,8 @@ public class JavonoLocalBuilder implements JavonoBuilder {
             LoggerFacade.getInstance().error("Toolchain missing make sure Javono is installed perfectly.");
         }
         try {
-            this.projectDir = ProjectBuilderFacade.getInstance().createProject();
+            SerialConfig serialConfig = SerialConfig.load(DetectorFacade.getInstance().getDotJavonoDir().toPath().resolve("javono.properties"));
+            this.projectDir = ProjectBuilderFacade.getInstance().createProject(ValidatorFacade.getInstance().getSketchModel(), this.buildProfile, serialConfig);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -112,6 +116,9 @@ public class JavonoLocalBuilder implements JavonoBuilder {
 
     @Override
     public JavonoBuilder setOption(String key, String value) {
+        if (key.equals("profile")) {
+            this.buildProfile = BuildProfile.fromName(value);
+        }
         return this;
     }
 
@@ -1,15 +1,19 @@
 package javono.cli;
 
+import javono.Version;
 import javono.bootstrap.JavonoBootstrap;
 import javono.builder.JavonoBuilder;
 import javono.builder.impl.JavonoLocalBuilder;
 import javono.builder.impl.RemoteBuilder;
+import javono.detector.DetectorFacade;
+import javono.device.DeviceFacade;
+import javono.device.SerialBenchmarkOptions;
 import javono.logger.LoggerFacade;
 
+import java.io.IOException;
 
-public class JavonoCli {
 
-    public static final String JAVONO_VERSION = "1.0.3";
+public class JavonoCli {
 
     public static void main(String[] args) {
         if (args.length == 0) {
@@ -19,15 +23,26 @@ public class JavonoCli {
 
         String command = args[0];
         boolean useRemote = false;
+        String profile = null;
 
-        // Parse optional flags like --remote
+        // Parse optional flags like --remote and --profile=size
         for (String arg : args) {
             if (arg.equalsIgnoreCase("--remote")) {
                 useRemote = true;
+            } else if (arg.startsWith("--profile=")) {
+                profile = arg.substring("--profile=".length());
             }
         }
 
         JavonoBuilder builder = useRemote ? new RemoteBuilder() : new JavonoLocalBuilder();
+        if (profile != null) {
+            try {
+                builder.setOption("profile", profile);
+            } catch (IllegalArgumentException e) {
+                LoggerFacade.getInstance().error(e.getMessage());
+                return;
+            }
+        }
 
         switch (command) {
             case "init":
@@ -48,13 +63,21 @@ public class JavonoCli {
 
             case "version":
             case "--version":
-                LoggerFacade.getInstance().info("Javono CLI version: " + JAVONO_VERSION);
+                LoggerFacade.getInstance().info("Javono CLI version: " + Version.JAVONO_VERSION);
                 break;
 
             case "uninstall":
                 JavonoBootstrap.uninstallJavono();
                 break;
 
+            case "bench":
+                runBenchmark(args);
+                break;
+
+            case "monitor":
+                runMonitor(args);
+                break;
+
             case "help":
             default:
                 printHelp();
@@ -62,12 +85,83 @@ public class JavonoCli {
         }
     }
 
+    private static void runBenchmark(String[] args) {
+        try {
+            DeviceFacade.getInstance().runSerialBenchmark(SerialBenchmarkOptions.parse(args));
+        } catch (IllegalArgumentException e) {
+            LoggerFacade.getInstance().error(e.getMessage());
+        } catch (IOException e) {
+            LoggerFacade.getInstance().error("Benchmark failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runMonitor(String[] args) {
+        String port = null;
+        boolean stats = false;
+        boolean record = true;
+        boolean replay = false;
+        String from = null;
+        String to = null;
+        String grep = null;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = arg.substring("--port=".length());
+            } else if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.equals("--no-record")) {
+                record = false;
+            } else if (arg.equals("--replay")) {
+                replay = true;
+            } else if (arg.startsWith("--from=")) {
+                from = arg.substring("--from=".length());
+            } else if (arg.startsWith("--to=")) {
+                to = arg.substring("--to=".length());
+            } else if (arg.startsWith("--grep=")) {
+                grep = arg.substring("--grep=".length());
+            }
+        }
+        if (replay) {
+            try {
+                DeviceFacade.getInstance().replaySerial(port, from, to, grep);
+            } catch (IllegalArgumentException e) {
+                LoggerFacade.getInstance().error(e.getMessage());
+            } catch (IOException e) {
+                LoggerFacade.getInstance().error("Replay failed: " + e.getMessage());
+            }
+            return;
+        }
+        if (port == null) port = DetectorFacade.getInstance().detectEsp32Port();
+        if (port == null) {
+            LoggerFacade.getInstance().error("ESP32 port could not be detected. Please connect your device or pass --port=<port>.");
+            return;
+        }
+        try {
+            DeviceFacade.getInstance().monitorSerial(port, stats, record);
+        } catch (IOException e) {
+            LoggerFacade.getInstance().error("Monitor failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static void printHelp() {
         LoggerFacade.getInstance().info("Javono CLI - Commands:");
         LoggerFacade.getInstance().info("     init              Set up the environment");
         LoggerFacade.getInstance().info("     build [--remote]  Build the Java sketch (local by default)");
+        LoggerFacade.getInstance().info("       --profile=<p>   performance (default), size or debug; kept for later builds");
         LoggerFacade.getInstance().info("     flash             Flash firmware to the device");
         LoggerFacade.getInstance().info("     clean             Clean build artifacts");
+        LoggerFacade.getInstance().info("     monitor           Show the device's serial output and record it in .Javono/logs");
+        LoggerFacade.getInstance().info("       --port=<p>      port to open (detected by default)");
+        LoggerFacade.getInstance().info("       --stats         show link metrics once a second instead (also over JMX)");
+        LoggerFacade.getInstance().info("       --no-record     do not record the output");
+        LoggerFacade.getInstance().info("       --replay        print recorded output; --from=<t> --to=<t> (-10m, 14:05, ISO), --grep=<text>");
+        LoggerFacade.getInstance().info("     bench             Benchmark the serial link (loopback fake device by default)");
+        LoggerFacade.getInstance().info("       --target=<t>    loopback, pty or a serial port running an echoing sketch");
+        LoggerFacade.getInstance().info("       --mode=<m>      stream, request or both; --size, --depth, --count, --warmup");
+        LoggerFacade.getInstance().info("       --binary        use binary frames; --out=<file> for the JSON results");
         LoggerFacade.getInstance().info("    --version          Shows current version of Javono");
         LoggerFacade.getInstance().info("    uninstall          This will uninstall the Javono");
         LoggerFacade.getInstance().info("     help              Show this help message");
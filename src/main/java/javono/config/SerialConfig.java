@@ -0,0 +1,250 @@
+package javono.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * UART settings shared by the generated firmware and the host serial stack, read from the
+ * javono.serial.* keys of the project's .Javono/javono.properties.
+ * <p>
+ * 921600 and 2000000 baud work with most USB-UART bridges (CH340, CP2102N, FT232R); the
+ * original CP2102 stops at 921600.
+ */
+public class SerialConfig {
+
+    public static final int DEFAULT_BAUD_RATE = 115200;
+    public static final SerialConfig DEFAULT = new SerialConfig(DEFAULT_BAUD_RATE, 8, Parity.NONE, 1, 0, 0, 65536, OverflowPolicy.DROP_OLDEST, 8, 2000, 0, 512, 5000);
+
+    private static final int MAX_BAUD_RATE = 5_000_000;
+
+    public enum Parity {
+        NONE, EVEN, ODD
+    }
+
+    /**
+     * What the host does with a message from the device when its receive queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Stop reading the port until there is room. */
+        BLOCK,
+        /** Drop the oldest queued message. */
+        DROP_OLDEST,
+        /** Drop the message that just arrived. */
+        DROP_NEWEST
+    }
+
+    private final int baudRate;
+    private final int dataBits;
+    private final Parity parity;
+    private final int stopBits;
+    private final int switchBaudRate;
+    private final int telemetryIntervalMs;
+    private final int receiveBufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxRequestsInFlight;
+    private final int requestTimeoutMs;
+    private final int coalesceDelayMs;
+    private final int coalesceMaxBytes;
+    private final int reconnectMaxDelayMs;
+
+    public SerialConfig(int baudRate, int dataBits, Parity parity, int stopBits, int switchBaudRate, int telemetryIntervalMs,
+                        int receiveBufferSize, OverflowPolicy overflowPolicy, int maxRequestsInFlight, int requestTimeoutMs,
+                        int coalesceDelayMs, int coalesceMaxBytes, int reconnectMaxDelayMs) {
+        if (baudRate <= 0 || baudRate > MAX_BAUD_RATE) {
+            throw new IllegalArgumentException("javono.serial.baudRate must be between 1 and " + MAX_BAUD_RATE + ": " + baudRate);
+        }
+        if (dataBits < 5 || dataBits > 8) {
+            throw new IllegalArgumentException("javono.serial.dataBits must be 5, 6, 7 or 8: " + dataBits);
+        }
+        if (stopBits != 1 && stopBits != 2) {
+            throw new IllegalArgumentException("javono.serial.stopBits must be 1 or 2: " + stopBits);
+        }
+        if (switchBaudRate < 0 || switchBaudRate > MAX_BAUD_RATE) {
+            throw new IllegalArgumentException("javono.serial.switchBaudRate must be between 0 and " + MAX_BAUD_RATE + ": " + switchBaudRate);
+        }
+        if (telemetryIntervalMs < 0) {
+            throw new IllegalArgumentException("javono.serial.telemetryIntervalMs must not be negative: " + telemetryIntervalMs);
+        }
+        if (receiveBufferSize <= 0) {
+            throw new IllegalArgumentException("javono.serial.receiveBufferSize must be positive: " + receiveBufferSize);
+        }
+        if (maxRequestsInFlight <= 0) {
+            throw new IllegalArgumentException("javono.serial.maxRequestsInFlight must be positive: " + maxRequestsInFlight);
+        }
+        if (requestTimeoutMs <= 0) {
+            throw new IllegalArgumentException("javono.serial.requestTimeoutMs must be positive: " + requestTimeoutMs);
+        }
+        if (coalesceDelayMs < 0) {
+            throw new IllegalArgumentException("javono.serial.coalesceDelayMs must not be negative: " + coalesceDelayMs);
+        }
+        if (coalesceMaxBytes <= 0) {
+            throw new IllegalArgumentException("javono.serial.coalesceMaxBytes must be positive: " + coalesceMaxBytes);
+        }
+        if (reconnectMaxDelayMs < 0) {
+            throw new IllegalArgumentException("javono.serial.reconnectMaxDelayMs must not be negative: " + reconnectMaxDelayMs);
+        }
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.parity = parity;
+        this.stopBits = stopBits;
+        this.switchBaudRate = switchBaudRate;
+        this.telemetryIntervalMs = telemetryIntervalMs;
+        this.receiveBufferSize = receiveBufferSize;
+        this.overflowPolicy = overflowPolicy;
+        this.maxRequestsInFlight = maxRequestsInFlight;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.coalesceDelayMs = coalesceDelayMs;
+        this.coalesceMaxBytes = coalesceMaxBytes;
+        this.reconnectMaxDelayMs = reconnectMaxDelayMs;
+    }
+
+    /**
+     * Reads the serial settings from a javono.properties file; missing keys keep their defaults.
+     *
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    public static SerialConfig load(Path propertiesFile) throws IOException {
+        if (!Files.exists(propertiesFile)) return DEFAULT;
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(propertiesFile)) {
+            properties.load(in);
+        }
+        return fromProperties(properties);
+    }
+
+    public static SerialConfig fromProperties(Properties properties) {
+        return new SerialConfig(
+                intValue(properties, "javono.serial.baudRate", DEFAULT.baudRate),
+                intValue(properties, "javono.serial.dataBits", DEFAULT.dataBits),
+                Parity.valueOf(properties.getProperty("javono.serial.parity", "none").trim().toUpperCase(Locale.ROOT)),
+                intValue(properties, "javono.serial.stopBits", DEFAULT.stopBits),
+                intValue(properties, "javono.serial.switchBaudRate", DEFAULT.switchBaudRate),
+                intValue(properties, "javono.serial.telemetryIntervalMs", DEFAULT.telemetryIntervalMs),
+                intValue(properties, "javono.serial.receiveBufferSize", DEFAULT.receiveBufferSize),
+                OverflowPolicy.valueOf(properties.getProperty("javono.serial.overflowPolicy", "drop-oldest").trim().toUpperCase(Locale.ROOT).replace('-', '_')),
+                intValue(properties, "javono.serial.maxRequestsInFlight", DEFAULT.maxRequestsInFlight),
+                intValue(properties, "javono.serial.requestTimeoutMs", DEFAULT.requestTimeoutMs),
+                intValue(properties, "javono.serial.coalesceDelayMs", DEFAULT.coalesceDelayMs),
+                intValue(properties, "javono.serial.coalesceMaxBytes", DEFAULT.coalesceMaxBytes),
+                intValue(properties, "javono.serial.reconnectMaxDelayMs", DEFAULT.reconnectMaxDelayMs));
+    }
+
+    private static int intValue(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number: " + value);
+        }
+    }
+
+    /**
+     * Returns the rate both sides use from reset until the handshake.
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public int getDataBits() {
+        return dataBits;
+    }
+
+    public Parity getParity() {
+        return parity;
+    }
+
+    public int getStopBits() {
+        return stopBits;
+    }
+
+    /**
+     * Returns the rate the host asks the device to switch to after the handshake, or 0 to stay
+     * at the base rate. If either side cannot confirm the new rate, both fall back to the base rate.
+     */
+    public int getSwitchBaudRate() {
+        return switchBaudRate;
+    }
+
+    /**
+     * Returns how often the firmware sends loop timing telemetry, or 0 to build it without
+     * the instrumentation.
+     */
+    public int getTelemetryIntervalMs() {
+        return telemetryIntervalMs;
+    }
+
+    /**
+     * Returns how many bytes of lines, and separately of binary payloads, the host keeps until
+     * they are read. Rounded up to a power of two.
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Returns how many requests may wait for their response at once; later ones are held back
+     * on the host until one completes.
+     */
+    public int getMaxRequestsInFlight() {
+        return maxRequestsInFlight;
+    }
+
+    /**
+     * Returns how long a request waits for its response unless the caller gives a timeout.
+     */
+    public int getRequestTimeoutMs() {
+        return requestTimeoutMs;
+    }
+
+    /**
+     * Returns how long the host may hold back a small batch of commands so that more can join
+     * it in the same USB transfer, or 0 to send each batch at once.
+     */
+    public int getCoalesceDelayMs() {
+        return coalesceDelayMs;
+    }
+
+    /**
+     * Returns how many bytes of waiting commands are sent without holding them back.
+     */
+    public int getCoalesceMaxBytes() {
+        return coalesceMaxBytes;
+    }
+
+    /**
+     * Returns the longest wait between attempts to reopen a port that failed, e.g. because the
+     * device reset, or 0 to give up at once. The first attempt comes after 100 ms, and the wait
+     * doubles after each one that fails.
+     */
+    public int getReconnectMaxDelayMs() {
+        return reconnectMaxDelayMs;
+    }
+
+    @Override
+    public String toString() {
+        return "SerialConfig{" +
+                "baudRate=" + baudRate +
+                ", dataBits=" + dataBits +
+                ", parity=" + parity +
+                ", stopBits=" + stopBits +
+                ", switchBaudRate=" + switchBaudRate +
+                ", telemetryIntervalMs=" + telemetryIntervalMs +
+                ", receiveBufferSize=" + receiveBufferSize +
+                ", overflowPolicy=" + overflowPolicy +
+                ", maxRequestsInFlight=" + maxRequestsInFlight +
+                ", requestTimeoutMs=" + requestTimeoutMs +
+                ", coalesceDelayMs=" + coalesceDelayMs +
+                ", coalesceMaxBytes=" + coalesceMaxBytes +
+                ", reconnectMaxDelayMs=" + reconnectMaxDelayMs +
+                '}';
+    }
+}
@@ -9,6 +9,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 
@@ -18,6 +20,9 @@ class PathDetector {
     public final String VERSION = "v5.4.2";
     private final String CONSTRAINT = "v5.4";
 
+    // Built on first use with every file the detect methods ask for
+    private ToolIndex toolIndex;
+
     private Path getDefaultIdfPath() {
         String os = System.getProperty("os.name").toLowerCase();
         if (os.contains("win")) {
@@ -40,16 +45,33 @@ class PathDetector {
     }
 
     public String detectTool(String executableName) {
-        File toolPath;
-        if (OS.detect().isWindows()) {
-            toolPath = searchFileRecursively(IDF_ROOT.toFile(), executableName);
-        } else {
-            toolPath = searchFileRecursively(getDefaultPath().toFile(), executableName);
-            if (toolPath == null || toolPath.equals("null")) {
-                toolPath = searchFileRecursively(Paths.get(System.getProperty("user.home"), ".espressif").toFile(), executableName);
-            }
+        Path toolPath = getToolIndex(executableName).find(executableName);
+        return (toolPath != null) ? toolPath.getParent().toString() : null;
+    }
+
+    private ToolIndex getToolIndex(String fileName) {
+        if (toolIndex == null) toolIndex = ToolIndex.build(getToolRoots(), getToolFileNames());
+        // A file no detect method asks for gets a walk of its own
+        return toolIndex.contains(fileName) || getToolFileNames().contains(fileName)
+                ? toolIndex
+                : ToolIndex.build(getToolRoots(), List.of(fileName));
+    }
+
+    // Searched in order; ~/.espressif only for what ~/Javono lacks
+    private List<Path> getToolRoots() {
+        if (OS.detect().isWindows()) return List.of(IDF_ROOT);
+        return List.of(getDefaultPath(), Paths.get(System.getProperty("user.home"), ".espressif"));
+    }
+
+    // Python, CMake and Ninja come from the PATH outside Windows
+    private List<String> getToolFileNames() {
+        List<String> names = new ArrayList<>(List.of("memory.tcl", "espidf.constraints." + CONSTRAINT + ".txt"));
+        String exe = isWindows() ? ".exe" : "";
+        for (String tool : List.of("xtensa-esp-elf-gcc", "ccache", "xtensa-esp32-elf-gdb", "dfu-util", "openocd", "clang")) {
+            names.add(tool + exe);
         }
-        return (toolPath != null) ? toolPath.getParent() : null;
+        if (isWindows()) names.addAll(List.of("python.exe", "cmake.exe", "ninja.exe"));
+        return names;
     }
 
     public String detectPythonPath() {
@@ -66,10 +88,9 @@ class PathDetector {
     }
 
     public String detectPythonExecutable() {
-        File file;
         if (OS.detect().isWindows()) {
-            file = searchFileRecursively(IDF_ROOT.toFile(), "python.exe");
-            return (file != null) ? file.getAbsolutePath() : null;
+            Path file = getToolIndex("python.exe").find("python.exe");
+            return (file != null) ? file.toAbsolutePath().toString() : null;
         } else {
             try {
                 return getSystemPath("python3");
@@ -137,8 +158,8 @@ class PathDetector {
     }
 
     public String detectOpenOcdScriptsPath() {
-        File file = searchFileRecursively(IDF_ROOT.toFile(), "memory.tcl");
-        return (file != null) ? file.getParent() : null;
+        Path file = getToolIndex("memory.tcl").find("memory.tcl", IDF_ROOT);
+        return (file != null) ? file.getParent().toString() : null;
     }
 
     public String detectEspClangPath() {
@@ -201,20 +222,4 @@ class PathDetector {
         return System.getProperty("os.name").toLowerCase().contains("win");
     }
 
-    private File searchFileRecursively(File dir, String targetFileName) {
-        if (dir == null || !dir.exists()) return null;
-        File[] files = dir.listFiles();
-        if (files == null) return null;
-
-        for (File f : files) {
-            if (f.isDirectory()) {
-                File result = searchFileRecursively(f, targetFileName);
-                if (result != null) return result;
-            } else if (f.getName().equalsIgnoreCase(targetFileName)) {
-                return f;
-            }
-        }
-        return null;
-    }
-
 }
@@ -0,0 +1,108 @@
+package javono.detector;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where the files the detector looks for lie, found in one walk over the install folders
+ * instead of one per tool. File names are matched ignoring case, and the paths of each are kept
+ * in the order the walk met them.
+ */
+final class ToolIndex {
+
+    // Folders that never hold a tool but make up much of an ESP-IDF checkout
+    private static final Set<String> PRUNED_DIRECTORIES = Set.of(".git", "__pycache__");
+
+    private final Map<String, List<Path>> paths = new HashMap<>();
+
+    private ToolIndex() {
+    }
+
+    /**
+     * Walks roots in order and indexes every file called one of names. A later root is only
+     * walked for the names the earlier ones did not have, like a fallback location.
+     */
+    static ToolIndex build(List<Path> roots, Collection<String> names) {
+        ToolIndex index = new ToolIndex();
+        Set<String> missing = new HashSet<>();
+        for (String name : names) missing.add(key(name));
+        for (Path root : roots) {
+            if (missing.isEmpty()) break;
+            if (!Files.isDirectory(root)) continue;
+            index.walk(root, missing);
+            missing.removeAll(index.paths.keySet());
+        }
+        return index;
+    }
+
+    private void walk(Path root, Set<String> wanted) {
+        try {
+            // Followed like File.isDirectory() does; a link back up the tree is skipped
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    Path name = dir.getFileName();
+                    return name != null && PRUNED_DIRECTORIES.contains(name.toString())
+                            ? FileVisitResult.SKIP_SUBTREE
+                            : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = key(file.getFileName().toString());
+                    if (wanted.contains(name)) paths.computeIfAbsent(name, k -> new ArrayList<>()).add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // Unreadable folders and symlink loops hold nothing we can use
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // Only thrown by the visitor, which never throws
+            throw new IllegalStateException("Failed to index " + root, e);
+        }
+    }
+
+    /**
+     * Returns the first file called name, or null.
+     */
+    Path find(String name) {
+        List<Path> found = paths.get(key(name));
+        return found == null ? null : found.get(0);
+    }
+
+    /**
+     * Returns the first file called name inside directory, or null.
+     */
+    Path find(String name, Path directory) {
+        for (Path path : paths.getOrDefault(key(name), List.of())) {
+            if (path.startsWith(directory)) return path;
+        }
+        return null;
+    }
+
+    boolean contains(String name) {
+        return paths.containsKey(key(name));
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -119,6 +119,29 @@ final class ToolPaths {
                 javono.cCacheBinPath=
                 javono.dfuUtilBinPath=
                 javono.openOcdScriptsPath=
+                
+                # UART settings used by both the generated firmware and the host
+                javono.serial.baudRate=115200
+                javono.serial.dataBits=8
+                javono.serial.parity=none
+                javono.serial.stopBits=1
+                # Optional rate to switch to after the handshake, e.g. 921600 or 2000000
+                javono.serial.switchBaudRate=
+                # Set to e.g. 1000 to build with loop timing telemetry, sent to the host at that interval
+                javono.serial.telemetryIntervalMs=
+                # Bytes of device output the host keeps until they are read, and what to do when
+                # they do not fit: block, drop-oldest or drop-newest
+                javono.serial.receiveBufferSize=65536
+                javono.serial.overflowPolicy=drop-oldest
+                # Requests sent ahead of their responses, and how long each waits for its response
+                javono.serial.maxRequestsInFlight=8
+                javono.serial.requestTimeoutMs=2000
+                # Set to e.g. 2 to hold small commands back up to that many ms, so bursts share a
+                # USB transfer; a batch of coalesceMaxBytes goes out at once
+                javono.serial.coalesceDelayMs=0
+                javono.serial.coalesceMaxBytes=512
+                # Longest wait between attempts to reopen the port after the device reset; 0 to give up
+                javono.serial.reconnectMaxDelayMs=5000
                 """;
 
         try {
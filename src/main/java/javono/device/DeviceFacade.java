@@ -1,4 +1,39 @@
 package javono.device;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class DeviceFacade {
+    private static final DeviceFacade INSTANCE = new DeviceFacade();
+
+    private DeviceFacade() {
+    }
+
+    public static DeviceFacade getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs the serial benchmark and returns the JSON report it wrote.
+     */
+    public Path runSerialBenchmark(SerialBenchmarkOptions options) throws IOException, InterruptedException {
+        return new SerialBenchmark(options).run();
+    }
+
+    /**
+     * Prints the device's output, or with stats the link's metrics once a second, until the
+     * port fails or the JVM is stopped. With record, the output is also kept in .Javono/logs.
+     */
+    public void monitorSerial(String portName, boolean stats, boolean record) throws IOException, InterruptedException {
+        new SerialMonitor(portName, stats, record).run();
+    }
+
+    /**
+     * Prints recorded device output; see {@link SerialMonitor#replay}.
+     *
+     * @throws IllegalArgumentException if a time cannot be parsed or the capture is ambiguous
+     */
+    public void replaySerial(String portName, String from, String to, String grep) throws IOException {
+        SerialMonitor.replay(portName, from, to, grep);
+    }
 }
@@ -1,10 +1,16 @@
 package javono.device;
 
+import javono.config.SerialConfig;
+import javono.detector.DetectorFacade;
 import javono.serial.JavonoSerialThreaded;
+import javono.serial.LogDecoder;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Represents a Javono-managed ESP32 device.
@@ -15,6 +21,8 @@ class Esp32Device {
     private final DeviceInfo deviceInfo;
 
     private JavonoSerialThreaded serialConnection;
+    private RequestPipeline requests;
+    private SerialConfig serialConfig = SerialConfig.DEFAULT;
     private OTAUploader otaUploader;
 
     public Esp32Device(DeviceInfo deviceInfo) {
@@ -22,26 +30,71 @@ class Esp32Device {
     }
 
     public void connectSerial() throws IOException {
-        if (serialConnection != null && serialConnection.isConnected()) {
+        if (serialConnection != null && (serialConnection.isConnected() || serialConnection.isReconnecting())) {
             return;
         }
-        serialConnection = new JavonoSerialThreaded(deviceInfo.getSerialPort());
-        serialConnection.open();
+        SerialConfig config = SerialConfig.load(DetectorFacade.getInstance().getDotJavonoDir().toPath().resolve("javono.properties"));
+        JavonoSerialThreaded connection = new JavonoSerialThreaded(deviceInfo.getSerialPort(), config);
+        connection.setLogDecoder(LogDecoder.load(DetectorFacade.getInstance().getDotJavonoDir().toPath().resolve("build").resolve("log-dictionary.properties")));
+        connectSerial(connection, config);
+    }
+
+    // Also used by SerialBenchmark to run over a stand-in link
+    void connectSerial(JavonoSerialThreaded connection, SerialConfig config) throws IOException {
+        serialConfig = config;
+        serialConnection = connection;
+        requests = new RequestPipeline(connection, config.getMaxRequestsInFlight());
+        connection.open();
     }
 
     public void disconnectSerial() {
+        if (requests != null) {
+            requests.close();
+            requests = null;
+        }
         if (serialConnection != null) {
             serialConnection.close();
             serialConnection = null;
         }
     }
 
+    /**
+     * Sends a command and waits for the sketch's Javono_serial_reply() to it.
+     *
+     * @return the reply, or empty if none arrived within javono.serial.requestTimeoutMs
+     */
     public Optional<String> sendSerialCommand(String command) throws IOException {
-        if (serialConnection == null || !serialConnection.isConnected()) {
+        try {
+            return Optional.of(sendRequest(command).get().getText());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Sends a command as a request without waiting. Up to javono.serial.maxRequestsInFlight
+     * requests are on the link at once; the future fails with a TimeoutException after
+     * javono.serial.requestTimeoutMs. It is not completed on the serial reader thread, so
+     * dependent stages may block.
+     */
+    public CompletableFuture<Response> sendRequest(String command) throws IOException {
+        return sendRequest(command, Duration.ofMillis(serialConfig.getRequestTimeoutMs()));
+    }
+
+    /**
+     * Like {@link #sendRequest(String)}, with its own timeout. The time spent waiting for a free
+     * slot counts toward it.
+     */
+    public CompletableFuture<Response> sendRequest(String command, Duration timeout) throws IOException {
+        // Requests made while the port is being reopened wait in its queue
+        if (serialConnection == null || !(serialConnection.isConnected() || serialConnection.isReconnecting())) {
             throw new IOException("Serial connection is not open");
         }
-        serialConnection.write(command);
-        return serialConnection.readResponse(); // depends on your JavonoSerialThreaded design
+        return requests.submit(command, timeout.toMillis());
     }
 
     public void uploadFirmwareOTA(Path firmwareBinPath) throws IOException {
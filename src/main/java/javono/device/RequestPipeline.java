@@ -0,0 +1,133 @@
+package javono.device;
+
+import javono.serial.JavonoSerialThreaded;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches the device's replies to the requests they answer by request id, and keeps up to
+ * maxInFlight requests on the link at once so the next ones go out without waiting for a
+ * round trip. Requests beyond that wait on the host in the order they were made.
+ * <p>
+ * A request that times out gives up its slot; a late reply to it is ignored.
+ * <p>
+ * Replies arrive on the connection's reader thread, but each future is completed on a virtual
+ * thread of its own, so stages a caller chains onto it may block without holding up the port.
+ */
+class RequestPipeline implements JavonoSerialThreaded.ResponseListener {
+
+    private static final ThreadFactory COMPLETION_THREADS = Thread.ofVirtual().name("JavonoRequest-", 0).factory();
+    private static final Executor COMPLETIONS = task -> COMPLETION_THREADS.newThread(task).start();
+
+    private final JavonoSerialThreaded connection;
+    private final int maxInFlight;
+
+    // Guarded by this
+    private final Map<Integer, Request> inFlight = new HashMap<>();
+    private final Queue<Request> waiting = new ArrayDeque<>();
+    private int nextId = 1;
+    private boolean closed = false;
+
+    RequestPipeline(JavonoSerialThreaded connection, int maxInFlight) {
+        this.connection = connection;
+        this.maxInFlight = maxInFlight;
+        connection.setResponseListener(this);
+    }
+
+    CompletableFuture<Response> submit(String command, long timeoutMs) {
+        Request request = new Request(command);
+        request.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        // Also runs on timeout, so the slot is freed however the request ends
+        request.future.whenComplete((response, error) -> release(request));
+
+        synchronized (this) {
+            if (closed) {
+                request.future.completeExceptionally(new IOException("Serial connection is closed"));
+            } else if (inFlight.size() < maxInFlight) {
+                send(request);
+            } else {
+                waiting.add(request);
+            }
+        }
+        return request.future;
+    }
+
+    @Override
+    public void onResponse(int requestId, String text) {
+        Request request;
+        synchronized (this) {
+            request = inFlight.get(requestId);
+        }
+        if (request == null) return;
+        Response response = new Response(requestId, request.command, text, System.nanoTime() - request.createdAt);
+        request.future.completeAsync(() -> response, COMPLETIONS);
+    }
+
+    /**
+     * Fails every open request; later submissions fail at once.
+     */
+    void close() {
+        List<Request> open;
+        synchronized (this) {
+            closed = true;
+            open = new ArrayList<>(inFlight.values());
+            open.addAll(waiting);
+            inFlight.clear();
+            waiting.clear();
+        }
+        IOException error = new IOException("Serial connection closed");
+        for (Request request : open) {
+            request.future.completeExceptionally(error);
+        }
+    }
+
+    synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    private synchronized void release(Request request) {
+        if (request.id == 0) {
+            waiting.remove(request);
+            return;
+        }
+        if (!inFlight.remove(request.id, request)) return;
+        while (inFlight.size() < maxInFlight && !closed) {
+            Request next = waiting.poll();
+            if (next == null) break;
+            if (!next.future.isDone()) send(next);
+        }
+    }
+
+    // Called with this locked
+    private void send(Request request) {
+        // Ids wrap at 16 bits; skip ones still waiting for a reply
+        do {
+            request.id = nextId;
+            nextId = nextId == 0xFFFF ? 1 : nextId + 1;
+        } while (inFlight.containsKey(request.id));
+        inFlight.put(request.id, request);
+        connection.writeRequest(request.id, request.command);
+    }
+
+    private static class Request {
+        private final String command;
+        private final long createdAt = System.nanoTime();
+        private final CompletableFuture<Response> future = new CompletableFuture<>();
+        // 0 until sent
+        private int id;
+
+        private Request(String command) {
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package javono.device;
+
+/**
+ * The device's reply to a request sent with {@link Esp32Device#sendRequest}.
+ */
+class Response {
+
+    private final int requestId;
+    private final String command;
+    private final String text;
+    private final long roundTripNanos;
+
+    public Response(int requestId, String command, String text, long roundTripNanos) {
+        this.requestId = requestId;
+        this.command = command;
+        this.text = text;
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Returns what the sketch passed to Javono_serial_reply().
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the time from handing the request to the serial connection to receiving the reply,
+     * including any wait for a free slot.
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Response{" +
+                "requestId=" + requestId +
+                ", command='" + command + '\'' +
+                ", text='" + text + '\'' +
+                ", roundTripNanos=" + roundTripNanos +
+                '}';
+    }
+}
@@ -0,0 +1,318 @@
+package javono.device;
+
+import com.google.gson.GsonBuilder;
+import javono.Version;
+import javono.config.SerialConfig;
+import javono.detector.DetectorFacade;
+import javono.logger.LoggerFacade;
+import javono.serial.FakeDevice;
+import javono.serial.JavonoSerialThreaded;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * End-to-end serial benchmark: sends messages to a fake device or a board running an echoing
+ * sketch, keeps up to depth of them on the link and times each echo. Reports messages and payload
+ * bytes per second and round-trip percentiles, and writes them as JSON so runs can be compared
+ * across releases.
+ */
+class SerialBenchmark {
+
+    // Marks benchmark lines among other output of the sketch, e.g. the default loop's "hello world"
+    private static final String PREFIX = "~b";
+    private static final long READY_TIMEOUT_MS = 10000;
+    private static final long ECHO_TIMEOUT_MS = 5000;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final SerialBenchmarkOptions options;
+
+    SerialBenchmark(SerialBenchmarkOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Runs the benchmarks the options select and writes the report.
+     *
+     * @return the JSON file written
+     */
+    Path run() throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<>();
+        SerialBenchmarkOptions.Mode mode = options.getMode();
+        if (mode != SerialBenchmarkOptions.Mode.REQUEST) results.add(runStream());
+        if (mode != SerialBenchmarkOptions.Mode.STREAM) results.add(runRequests());
+
+        Report report = new Report(options, results);
+        Path output = options.getOutput() != null
+                ? Path.of(options.getOutput())
+                : Path.of("benchmark-results", "serial-" + LocalDateTime.now().format(FILE_TIME) + ".json");
+        if (output.toAbsolutePath().getParent() != null) Files.createDirectories(output.toAbsolutePath().getParent());
+        Files.writeString(output, new GsonBuilder().setPrettyPrinting().create().toJson(report), StandardCharsets.UTF_8);
+
+        results.forEach(result -> LoggerFacade.getInstance().info(result.toString()));
+        LoggerFacade.getInstance().success("Benchmark results: " + output.toAbsolutePath());
+        return output;
+    }
+
+    // Lines through JavonoSerialThreaded; the echoes come back in order
+    private Result runStream() throws IOException, InterruptedException {
+        FakeDevice device = startDevice();
+        SerialConfig config = config();
+        JavonoSerialThreaded connection = connect(device, config);
+        try {
+            connection.open();
+            awaitReady(connection);
+
+            int total = options.getWarmup() + options.getCount();
+            AtomicLongArray sentAt = new AtomicLongArray(total);
+            long[] latencies = new long[options.getCount()];
+            AtomicInteger measured = new AtomicInteger();
+            long[] finishedAt = new long[1];
+            Semaphore window = new Semaphore(options.getDepth());
+
+            // Only the receiver touches it. A line can come back twice, e.g. when a write is sent again
+            // after a reconnect, and a board's own output may look like one of ours
+            BitSet seen = new BitSet(total);
+            AtomicInteger duplicates = new AtomicInteger();
+            Thread receiver = new Thread(() -> {
+                try {
+                    for (int received = 0; received < total; ) {
+                        String line = connection.lines().poll(ECHO_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        if (line == null) break;
+                        int index = indexOf(line);
+                        if (index < 0 || index >= total || sentAt.get(index) == 0) continue;
+                        if (seen.get(index)) {
+                            duplicates.incrementAndGet();
+                            continue;
+                        }
+                        seen.set(index);
+                        long now = System.nanoTime();
+                        if (index >= options.getWarmup() && measured.get() < latencies.length) {
+                            latencies[measured.getAndIncrement()] = now - sentAt.get(index);
+                        }
+                        finishedAt[0] = now;
+                        received++;
+                        window.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "JavonoBenchmarkReceiver");
+            receiver.start();
+
+            long startedAt = System.nanoTime();
+            for (int i = 0; i < total && receiver.isAlive(); i++) {
+                if (!window.tryAcquire(ECHO_TIMEOUT_MS, TimeUnit.MILLISECONDS)) break;
+                if (i == options.getWarmup()) startedAt = System.nanoTime();
+                sentAt.set(i, System.nanoTime());
+                connection.write(message(i));
+            }
+            receiver.join();
+            if (duplicates.get() > 0) {
+                LoggerFacade.getInstance().warn(duplicates.get() + " echoes arrived twice and were not counted again.");
+            }
+            int done = measured.get();
+            return new Result("JavonoSerialThreaded.stream", done, options.getCount() - done,
+                    finishedAt[0] - startedAt, Arrays.copyOf(latencies, done), options.getMessageSize());
+        } finally {
+            connection.close();
+            if (device != null) device.close();
+        }
+    }
+
+    // Correlated requests through Esp32Device; depth is the pipeline's in-flight limit
+    private Result runRequests() throws IOException, InterruptedException {
+        FakeDevice fake = startDevice();
+        SerialConfig config = config();
+        JavonoSerialThreaded connection = connect(fake, config);
+        Esp32Device device = new Esp32Device(new DeviceInfo("benchmark", "ESP32", "", connection.getPortName(), "", ""));
+        try {
+            device.connectSerial(connection, config);
+            awaitReady(connection);
+
+            int total = options.getWarmup() + options.getCount();
+            long[] latencies = new long[options.getCount()];
+            AtomicInteger measured = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(total);
+            // Keeps requests from waiting on the host, which would count toward their round trip
+            Semaphore window = new Semaphore(options.getDepth());
+
+            long startedAt = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                window.acquire();
+                if (i == options.getWarmup()) startedAt = System.nanoTime();
+                boolean measure = i >= options.getWarmup();
+                device.sendRequest(message(i)).whenComplete((response, error) -> {
+                    if (error != null) {
+                        if (measure) failed.incrementAndGet();
+                    } else if (measure) {
+                        latencies[measured.getAndIncrement()] = response.getRoundTripNanos();
+                    }
+                    window.release();
+                    done.countDown();
+                });
+            }
+            done.await();
+            long elapsed = System.nanoTime() - startedAt;
+            int count = measured.get();
+            return new Result("Esp32Device.request", count, failed.get(), elapsed,
+                    Arrays.copyOf(latencies, count), options.getMessageSize());
+        } finally {
+            device.disconnectSerial();
+            if (fake != null) fake.close();
+        }
+    }
+
+    private FakeDevice startDevice() throws IOException {
+        return switch (options.getTarget()) {
+            case "loopback" -> FakeDevice.startLoopback("loopback");
+            case "pty" -> FakeDevice.startPty();
+            default -> null;
+        };
+    }
+
+    private JavonoSerialThreaded connect(FakeDevice device, SerialConfig config) {
+        return device != null
+                ? new JavonoSerialThreaded(device.getHostTransport(), config)
+                : new JavonoSerialThreaded(options.getTarget(), config);
+    }
+
+    // A board uses the project's UART settings; nothing is dropped and requests wait long enough
+    private SerialConfig config() throws IOException {
+        SerialConfig base = isFake()
+                ? SerialConfig.DEFAULT
+                : SerialConfig.load(DetectorFacade.getInstance().getDotJavonoDir().toPath().resolve("javono.properties"));
+        return new SerialConfig(base.getBaudRate(), base.getDataBits(), base.getParity(), base.getStopBits(),
+                base.getSwitchBaudRate(), base.getTelemetryIntervalMs(), base.getReceiveBufferSize(),
+                SerialConfig.OverflowPolicy.BLOCK, options.getDepth(), (int) ECHO_TIMEOUT_MS,
+                base.getCoalesceDelayMs(), base.getCoalesceMaxBytes(), base.getReconnectMaxDelayMs());
+    }
+
+    private boolean isFake() {
+        return options.getTarget().equals("loopback") || options.getTarget().equals("pty");
+    }
+
+    private void awaitReady(JavonoSerialThreaded connection) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + READY_TIMEOUT_MS;
+        while (!connection.isHandshakeComplete()) {
+            if (System.currentTimeMillis() > deadline) throw new IOException("No handshake from " + connection.getPortName());
+            Thread.sleep(1);
+        }
+        if (!options.isBinary()) return;
+        connection.enableBinaryMode();
+        while (!connection.isBinaryMode()) {
+            if (System.currentTimeMillis() > deadline) throw new IOException(connection.getPortName() + " did not switch to binary mode");
+            Thread.sleep(1);
+        }
+    }
+
+    // "~b<index> " padded with 'x' to the message size
+    private String message(int index) {
+        StringBuilder message = new StringBuilder(options.getMessageSize());
+        message.append(PREFIX).append(index).append(' ');
+        while (message.length() < options.getMessageSize()) message.append('x');
+        return message.toString();
+    }
+
+    // Finds a message in an echo, which may carry a prefix such as "echo "
+    private static int indexOf(String line) {
+        int start = line.indexOf(PREFIX);
+        if (start < 0) return -1;
+        int end = line.indexOf(' ', start);
+        try {
+            return Integer.parseInt(line.substring(start + PREFIX.length(), end < 0 ? line.length() : end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Serialized with Gson; field names are the JSON keys
+    private static class Report {
+        private final String javonoVersion = Version.JAVONO_VERSION;
+        private final String timestamp = LocalDateTime.now().toString();
+        private final String javaVersion = System.getProperty("java.version");
+        private final String os = System.getProperty("os.name") + " " + System.getProperty("os.arch");
+        private final String target;
+        private final boolean binary;
+        private final int messageSize;
+        private final int depth;
+        private final int count;
+        private final List<Result> results;
+
+        private Report(SerialBenchmarkOptions options, List<Result> results) {
+            this.target = options.getTarget();
+            this.binary = options.isBinary();
+            this.messageSize = options.getMessageSize();
+            this.depth = options.getDepth();
+            this.count = options.getCount();
+            this.results = results;
+        }
+    }
+
+    private static class Result {
+        private final String benchmark;
+        private final int messages;
+        private final int failed;
+        private final double seconds;
+        private final double messagesPerSecond;
+        // Payload bytes in each direction
+        private final double bytesPerSecond;
+        private final Latency latencyMicros;
+
+        private Result(String benchmark, int messages, int failed, long elapsedNanos, long[] latencies, int messageSize) {
+            this.benchmark = benchmark;
+            this.messages = messages;
+            this.failed = failed;
+            this.seconds = elapsedNanos / 1e9;
+            this.messagesPerSecond = seconds > 0 ? messages / seconds : 0;
+            this.bytesPerSecond = messagesPerSecond * messageSize;
+            this.latencyMicros = new Latency(latencies);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[bench] %-28s %7d msgs  %9.0f msg/s  %10.0f B/s  p50 %7.0f us  p99 %7.0f us  p99.9 %7.0f us  max %7.0f us  failed %d",
+                    benchmark, messages, messagesPerSecond, bytesPerSecond,
+                    latencyMicros.p50, latencyMicros.p99, latencyMicros.p999, latencyMicros.max, failed);
+        }
+    }
+
+    private static class Latency {
+        private final double p50;
+        private final double p99;
+        private final double p999;
+        private final double max;
+        private final double mean;
+
+        private Latency(long[] nanos) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            this.p50 = percentile(sorted, 0.50);
+            this.p99 = percentile(sorted, 0.99);
+            this.p999 = percentile(sorted, 0.999);
+            this.max = sorted.length == 0 ? -1 : sorted[sorted.length - 1] / 1000.0;
+            this.mean = sorted.length == 0 ? -1 : Arrays.stream(sorted).average().orElse(0) / 1000.0;
+        }
+
+        // Nearest rank
+        private static double percentile(long[] sorted, double fraction) {
+            if (sorted.length == 0) return -1;
+            int rank = (int) Math.ceil(fraction * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1000.0;
+        }
+    }
+}
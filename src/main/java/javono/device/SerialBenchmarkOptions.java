@@ -0,0 +1,123 @@
+package javono.device;
+
+/**
+ * Settings of a serial benchmark run, usually parsed from the javono bench command line.
+ */
+public class SerialBenchmarkOptions {
+
+    /** What the benchmark measures. */
+    public enum Mode {
+        /** Lines through JavonoSerialThreaded, matched to their echoes in order. */
+        STREAM,
+        /** Correlated requests through Esp32Device.sendRequest(). */
+        REQUEST,
+        BOTH
+    }
+
+    private String target = "loopback";
+    private Mode mode = Mode.BOTH;
+    private int messageSize = 64;
+    private int depth = 8;
+    private int count = 10000;
+    private int warmup = 1000;
+    private boolean binary = false;
+    private String output;
+
+    /**
+     * Reads --target=, --mode=, --size=, --depth=, --count=, --warmup=, --binary and --out=;
+     * other arguments are ignored.
+     *
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    public static SerialBenchmarkOptions parse(String[] args) {
+        SerialBenchmarkOptions options = new SerialBenchmarkOptions();
+        for (String arg : args) {
+            if (arg.startsWith("--target=")) {
+                options.target = arg.substring("--target=".length());
+            } else if (arg.startsWith("--mode=")) {
+                try {
+                    options.mode = Mode.valueOf(arg.substring("--mode=".length()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("--mode must be stream, request or both: " + arg);
+                }
+            } else if (arg.startsWith("--size=")) {
+                options.messageSize = number(arg, "--size=", 1);
+            } else if (arg.startsWith("--depth=")) {
+                options.depth = number(arg, "--depth=", 1);
+            } else if (arg.startsWith("--count=")) {
+                options.count = number(arg, "--count=", 1);
+            } else if (arg.startsWith("--warmup=")) {
+                // Zero turns the warmup off
+                options.warmup = number(arg, "--warmup=", 0);
+            } else if (arg.equals("--binary")) {
+                options.binary = true;
+            } else if (arg.startsWith("--out=")) {
+                options.output = arg.substring("--out=".length());
+            }
+        }
+        // Lines longer than the firmware's BUF_SIZE are truncated
+        if (options.messageSize < 8 || options.messageSize > 500) {
+            throw new IllegalArgumentException("--size must be between 8 and 500 bytes: " + options.messageSize);
+        }
+        return options;
+    }
+
+    private static int number(String arg, String prefix, int min) {
+        int value;
+        try {
+            value = Integer.parseInt(arg.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(prefix + " must be a number: " + arg);
+        }
+        if (value < min) throw new IllegalArgumentException(prefix + " must be at least " + min + ": " + arg);
+        return value;
+    }
+
+    /**
+     * Returns "loopback" for the in-memory fake device, "pty" for the fake device behind a
+     * pseudo-terminal, or the name of a port with a board running an echoing sketch.
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the length of each message in bytes, without the newline.
+     */
+    public int getMessageSize() {
+        return messageSize;
+    }
+
+    /**
+     * Returns how many messages may be on the link without their echo; 1 measures plain round trips.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the messages sent before measuring, so the JIT and the link settle first.
+     */
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Returns the file the JSON results go to, or null for the default under benchmark-results.
+     */
+    public String getOutput() {
+        return output;
+    }
+}
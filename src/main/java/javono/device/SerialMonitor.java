@@ -0,0 +1,196 @@
+package javono.device;
+
+import javono.config.SerialConfig;
+import javono.detector.DetectorFacade;
+import javono.logger.LoggerFacade;
+import javono.serial.JavonoSerialThreaded;
+import javono.serial.LogDecoder;
+import javono.serial.SerialCapture;
+import javono.serial.SerialCaptureReader;
+import javono.serial.SerialMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints what the device sends until the port fails or the user stops it, and records it with
+ * a {@link SerialCapture} under .Javono/logs/&lt;port&gt;. In stats mode it prints the link's
+ * {@link SerialMetrics} once a second instead, with rates over that second. Either way the loop
+ * telemetry totals are printed when it stops, if the firmware sends telemetry.
+ * <p>
+ * {@link #replay} prints a time range of what was recorded, optionally only lines containing
+ * some text.
+ */
+class SerialMonitor {
+
+    private static final long STATS_INTERVAL_MS = 1000;
+    private static final DateTimeFormatter RECORD_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final String portName;
+    private final boolean stats;
+    private final boolean record;
+    private volatile boolean stopping = false;
+
+    SerialMonitor(String portName, boolean stats, boolean record) {
+        this.portName = portName;
+        this.stats = stats;
+        this.record = record;
+    }
+
+    void run() throws IOException, InterruptedException {
+        Path dotJavono = DetectorFacade.getInstance().getDotJavonoDir().toPath();
+        SerialConfig config = SerialConfig.load(dotJavono.resolve("javono.properties"));
+        JavonoSerialThreaded connection = new JavonoSerialThreaded(portName, config);
+        connection.setLogDecoder(LogDecoder.load(dotJavono.resolve("build").resolve("log-dictionary.properties")));
+        SerialCapture capture = record
+                ? new SerialCapture(captureDirectory(portName), SerialCapture.DEFAULT_SEGMENT_SIZE, SerialCapture.DEFAULT_MAX_SEGMENTS)
+                : null;
+        connection.open();
+        Thread closer = new Thread(() -> {
+            stopping = true;
+            connection.close();
+            if (capture != null) capture.close();
+        });
+        Runtime.getRuntime().addShutdownHook(closer);
+        LoggerFacade.getInstance().info("Monitoring " + portName + " at " + config.getBaudRate() + " baud, Ctrl+C to stop");
+        if (capture != null) LoggerFacade.getInstance().info("Recording to " + capture.getDirectory());
+
+        SerialMetrics metrics = connection.getMetrics();
+        Sample last = new Sample(metrics);
+        try {
+            // A lost port is reopened by the connection itself; lines resume once it is back
+            while (connection.isConnected() || connection.isReconnecting()) {
+                String line = connection.lines().poll(100, TimeUnit.MILLISECONDS);
+                if (line != null) {
+                    if (!stats) System.out.println(line);
+                    if (capture != null) capture.append(System.currentTimeMillis(), line);
+                }
+                if (stats && System.currentTimeMillis() - last.takenAt >= STATS_INTERVAL_MS) {
+                    Sample now = new Sample(metrics);
+                    printStats(metrics, last, now);
+                    last = now;
+                }
+            }
+            if (!stopping) LoggerFacade.getInstance().error("Lost connection to " + portName);
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(closer);
+            } catch (IllegalStateException e) {
+                // The JVM is shutting down and the hook closes the port
+            }
+            connection.close();
+            if (capture != null) capture.close();
+            // close() printed the totals if there were any
+            if (config.getTelemetryIntervalMs() > 0 && connection.getTelemetry().isEmpty()) {
+                connection.getTelemetry().printSummary();
+            }
+        }
+    }
+
+    /**
+     * Prints the recorded lines from from to to that contain grep, each with its time.
+     *
+     * @param portName the port whose capture to read, or null if only one port was recorded
+     * @param from     see {@link #parseTime}; null for the start of the capture
+     * @param to       see {@link #parseTime}; null for its end
+     * @param grep     text the lines must contain, or null for all
+     */
+    static void replay(String portName, String from, String to, String grep) throws IOException {
+        Path directory = portName != null ? captureDirectory(portName) : onlyCaptureDirectory();
+        long now = System.currentTimeMillis();
+        long fromMillis = from != null ? parseTime(from, now) : 0;
+        long toMillis = to != null ? parseTime(to, now) : Long.MAX_VALUE;
+        int[] printed = {0};
+        new SerialCaptureReader(directory).read(fromMillis, toMillis, (time, text) -> {
+            if (grep == null || text.contains(grep)) {
+                System.out.println("[" + RECORD_TIME.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault())) + "] " + text);
+                printed[0]++;
+            }
+            return true;
+        });
+        LoggerFacade.getInstance().info(printed[0] + " lines from " + directory);
+    }
+
+    static Path captureDirectory(String portName) {
+        // "/dev/ttyUSB0" is recorded as ttyUSB0, "COM3" as COM3
+        String name = new File(portName).getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return DetectorFacade.getInstance().getDotJavonoDir().toPath().resolve("logs").resolve(name);
+    }
+
+    private static Path onlyCaptureDirectory() {
+        File[] captures = DetectorFacade.getInstance().getDotJavonoDir().toPath().resolve("logs").toFile().listFiles(File::isDirectory);
+        if (captures == null || captures.length != 1) {
+            throw new IllegalArgumentException("Pass --port=<port> to choose which capture to read.");
+        }
+        return captures[0].toPath();
+    }
+
+    /**
+     * Parses a time given on the command line: relative to now ("-30s", "-10m", "-2h", "-1d"),
+     * a local date and time ("2026-01-31T14:05:00") or a time of today ("14:05", "14:05:30").
+     *
+     * @return epoch millis
+     * @throws IllegalArgumentException if the text is none of these
+     */
+    static long parseTime(String text, long nowMillis) {
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            if (text.startsWith("-") && text.length() > 2) {
+                long amount = Long.parseLong(text.substring(1, text.length() - 1));
+                long unitMillis = switch (text.charAt(text.length() - 1)) {
+                    case 's' -> 1000L;
+                    case 'm' -> 60_000L;
+                    case 'h' -> 3_600_000L;
+                    case 'd' -> 86_400_000L;
+                    default -> throw new IllegalArgumentException("Unknown time unit in " + text + "; use s, m, h or d");
+                };
+                return nowMillis - amount * unitMillis;
+            }
+            if (text.contains("T")) {
+                return LocalDateTime.parse(text).atZone(zone).toInstant().toEpochMilli();
+            }
+            return LocalTime.parse(text).atDate(LocalDate.now(zone)).atZone(zone).toInstant().toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a time: " + text + " (use e.g. -10m, 14:05 or 2026-01-31T14:05:00)");
+        }
+    }
+
+    private static void printStats(SerialMetrics metrics, Sample last, Sample now) {
+        double seconds = Math.max(1, now.takenAt - last.takenAt) / 1000.0;
+        LoggerFacade.getInstance().info(String.format("%s  in %7.0f B/s %6.0f frames/s  out %7.0f B/s %6.0f frames/s  queue %d (peak %d)  lost %d  dropped %d  reconnects %d",
+                metrics.getPortName(),
+                (now.bytesIn - last.bytesIn) / seconds, (now.framesIn - last.framesIn) / seconds,
+                (now.bytesOut - last.bytesOut) / seconds, (now.framesOut - last.framesOut) / seconds,
+                metrics.getWriteQueueDepth(), metrics.getWriteQueuePeak(),
+                metrics.getLostFrames(), metrics.getDroppedMessages(), metrics.getReconnects()));
+        LoggerFacade.getInstance().info(String.format("%s  read latency p50 %.0f us p99 %.0f us max %.0f us  write latency p50 %.0f us p99 %.0f us max %.0f us",
+                " ".repeat(metrics.getPortName().length()),
+                metrics.getReadLatencyP50Micros(), metrics.getReadLatencyP99Micros(), metrics.getReadLatencyMaxMicros(),
+                metrics.getWriteLatencyP50Micros(), metrics.getWriteLatencyP99Micros(), metrics.getWriteLatencyMaxMicros()));
+    }
+
+    // The counters at one moment, to turn them into rates
+    private static class Sample {
+        private final long takenAt = System.currentTimeMillis();
+        private final long bytesIn;
+        private final long bytesOut;
+        private final long framesIn;
+        private final long framesOut;
+
+        private Sample(SerialMetrics metrics) {
+            this.bytesIn = metrics.getBytesIn();
+            this.bytesOut = metrics.getBytesOut();
+            this.framesIn = metrics.getFramesIn();
+            this.framesOut = metrics.getFramesOut();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package javono.flasher;
 
 
+import javono.analyzer.AnalyzerFacade;
 import javono.logger.LoggerFacade;
 
 import java.io.*;
@@ -10,14 +11,16 @@ class Esp32Flasher {
 
     public void flashProject(File projectDir) throws IOException, InterruptedException {
         String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
-        ProcessBuilder pb = getProcessBuilder(projectDir, os);
-        Process process = pb.start();
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            reader.lines().forEach(System.out::println);
+        // Build first so the firmware can be checked before it reaches the device
+        int exitCode = runScript(getProcessBuilder(projectDir, os, "build"));
+        if (exitCode != 0) {
+            throw new RuntimeException("Build failed with exit code: " + exitCode);
         }
 
-        int exitCode = process.waitFor();
+        AnalyzerFacade.getInstance().analyzeBuild(projectDir);
+
+        exitCode = runScript(getProcessBuilder(projectDir, os, "flash"));
 
         if (exitCode != 0) {
             throw new RuntimeException("Flashing failed with exit code: " + exitCode);
@@ -26,7 +29,17 @@ class Esp32Flasher {
         }
     }
 
-    private static ProcessBuilder getProcessBuilder(File projectDir, String os) throws FileNotFoundException {
+    private static int runScript(ProcessBuilder pb) throws IOException, InterruptedException {
+        Process process = pb.start();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            reader.lines().forEach(System.out::println);
+        }
+
+        return process.waitFor();
+    }
+
+    private static ProcessBuilder getProcessBuilder(File projectDir, String os, String mode) throws FileNotFoundException {
         ProcessBuilder pb;
 
         if (os.contains("win")) {
@@ -34,14 +47,14 @@ class Esp32Flasher {
             if (!batchFile.exists()) {
                 throw new FileNotFoundException("Batch file not found: " + batchFile.getAbsolutePath());
             }
-            pb = new ProcessBuilder("cmd.exe", "/c", batchFile.getName());
+            pb = new ProcessBuilder("cmd.exe", "/c", batchFile.getName(), mode);
             pb.directory(projectDir);
         } else {
             File shellFile = new File(projectDir, "esp32_build_flash.sh");
             if (!shellFile.exists()) {
                 throw new FileNotFoundException("Shell script not found: " + shellFile.getAbsolutePath());
             }
-            pb = new ProcessBuilder("bash", shellFile.getName());
+            pb = new ProcessBuilder("bash", shellFile.getName(), mode);
             pb.directory(projectDir);
         }
 
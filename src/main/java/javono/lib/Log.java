@@ -0,0 +1,35 @@
+package javono.lib;
+
+/**
+ * Sketch logging. The format must be a string literal using only %d, %x, %X and %%: the
+ * generator gives every format an ID, the device sends just the ID and the arguments, and the
+ * host puts the message back together from .javono/build/log-dictionary.properties.
+ * <p>
+ * Sketch method bodies are not translated to C yet. A call is sent by the device only if it is a
+ * statement directly in the body of the init, loop or a task method and its arguments are integer
+ * literals; the build warns about every other call. On the JVM these methods print the message
+ * directly.
+ */
+public class Log {
+
+    public static void info(String format, int... args) {
+        print("I", format, args);
+    }
+
+    public static void warn(String format, int... args) {
+        print("W", format, args);
+    }
+
+    public static void error(String format, int... args) {
+        print("E", format, args);
+    }
+
+    // Same output as the host decoder, for sketches run on the JVM
+    private static void print(String level, String format, int[] args) {
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            values[i] = args[i];
+        }
+        System.out.println(level + " " + String.format(format, values));
+    }
+}
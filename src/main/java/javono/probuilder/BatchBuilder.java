@@ -55,6 +55,10 @@ class BatchBuilder {
                 REM Move to project directory
                 cd /d "%s"
                 
+                REM Optional mode: build, flash, or both when omitted
+                set "MODE=%%~1"
+                if /i "%%MODE%%"=="flash" goto flash
+                
                 echo Preparing project to flash...
                 call "%%PYTHON_EXE_PATH%%" "%%IDF_PATH%%\\tools\\idf.py" build
                 if errorlevel 1 (
@@ -63,6 +67,12 @@ class BatchBuilder {
                     exit /b 1
                 )
                 
+                if /i "%%MODE%%"=="build" (
+                    echo Build completed.
+                    exit /b 0
+                )
+                
+                :flash
                 echo Flashing firmware to %s...
                 call "%%PYTHON_EXE_PATH%%" "%%IDF_PATH%%\\tools\\idf.py" -p %s flash
                 if errorlevel 1 (
@@ -93,15 +103,25 @@ class BatchBuilder {
                 IDF_PATH="%s"
                 PROJECT_DIR="%s"
                 
+                # Optional mode: build, flash, or both when omitted
+                MODE="${1:-all}"
+                
                 # Load ESP-IDF environment
                 source "$IDF_PATH/export.sh"
                 
                 # === Build the project ===
-                echo "Preparing project to flash..."
-                idf.py build
-                if [ $? -ne 0 ]; then
-                    echo "❌ Build failed!"
-                    exit 1
+                if [ "$MODE" != "flash" ]; then
+                    echo "Preparing project to flash..."
+                    idf.py build
+                    if [ $? -ne 0 ]; then
+                        echo "❌ Build failed!"
+                        exit 1
+                    fi
+                fi
+                
+                if [ "$MODE" = "build" ]; then
+                    echo "Build completed."
+                    exit 0
                 fi
                 
                 # === Flash the project ===
@@ -0,0 +1,66 @@
+package javono.probuilder;
+
+import java.util.Locale;
+
+/**
+ * Selects the sdkconfig.defaults the generated project is built with.
+ * All profiles run the CPU at 240 MHz and the flash in QIO mode at 80 MHz, and tick FreeRTOS at
+ * 1000 Hz, since loop periods are whole milliseconds and a slower tick cannot time them.
+ */
+public enum BuildProfile {
+
+    PERFORMANCE("""
+            CONFIG_COMPILER_OPTIMIZATION_PERF=y
+            CONFIG_LOG_DEFAULT_LEVEL_WARN=y
+            CONFIG_BOOTLOADER_LOG_LEVEL_WARN=y
+            """),
+    SIZE("""
+            CONFIG_COMPILER_OPTIMIZATION_SIZE=y
+            CONFIG_COMPILER_OPTIMIZATION_ASSERTIONS_SILENT=y
+            CONFIG_LOG_DEFAULT_LEVEL_ERROR=y
+            CONFIG_BOOTLOADER_LOG_LEVEL_ERROR=y
+            """),
+    DEBUG("""
+            CONFIG_COMPILER_OPTIMIZATION_DEBUG=y
+            CONFIG_LOG_DEFAULT_LEVEL_DEBUG=y
+            CONFIG_BOOTLOADER_LOG_LEVEL_INFO=y
+            """);
+
+    public static final BuildProfile DEFAULT = PERFORMANCE;
+
+    private static final String COMMON = """
+            CONFIG_ESP_DEFAULT_CPU_FREQ_MHZ_240=y
+            CONFIG_ESPTOOLPY_FLASHMODE_QIO=y
+            CONFIG_ESPTOOLPY_FLASHFREQ_80M=y
+            CONFIG_FREERTOS_HZ=1000
+            """;
+
+    private final String settings;
+
+    BuildProfile(String settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Returns the profile for a --profile value such as "size".
+     *
+     * @throws IllegalArgumentException if the name is not a known profile
+     */
+    public static BuildProfile fromName(String name) {
+        for (BuildProfile profile : values()) {
+            if (profile.getName().equals(name.toLowerCase(Locale.ROOT))) return profile;
+        }
+        throw new IllegalArgumentException("Unknown build profile: " + name + " (expected performance, size or debug)");
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the content of sdkconfig.defaults for this profile.
+     */
+    public String sdkconfigDefaults() {
+        return "# Generated by Javono for the '" + getName() + "' build profile\n" + COMMON + settings;
+    }
+}
@@ -1,5 +1,7 @@
 package javono.probuilder;
 
+import javono.config.SerialConfig;
+import javono.validator.SketchModel;
 import javono.validator.ValidatorFacade;
 
 import javax.tools.JavaCompiler;
@@ -35,6 +37,10 @@ public class ProjectBuilderFacade {
         return projectCreator.createProject();
     }
 
+    public File createProject(SketchModel sketchModel, BuildProfile buildProfile, SerialConfig serialConfig) throws IOException {
+        return projectCreator.createProject(sketchModel, buildProfile, serialConfig);
+    }
+
     public boolean compileWithProcessor(File sourceDir, File outputDir, String classpath) {
         JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
         if (compiler == null) {
@@ -1,19 +1,57 @@
 package javono.probuilder;
 
+import javono.config.SerialConfig;
 import javono.detector.DetectorFacade;
 import javono.detector.OS;
 import javono.logger.LoggerFacade;
+import javono.validator.SketchLogCall;
+import javono.validator.SketchLogMessage;
+import javono.validator.SketchModel;
+import javono.validator.SketchTask;
 
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 
 class ProjectCreator {
 
+    static final String CALL_GRAPH_FILE = "callgraph.properties";
+    static final String FINGERPRINT_FILE = "fingerprint.properties";
+    static final String LOG_DICTIONARY_FILE = "log-dictionary.properties";
+    private static final int SERIAL_RX_STACK_SIZE = 3072;
+    private static final int SERIAL_TX_STACK_SIZE = 2048;
+    private static final int TELEMETRY_STACK_SIZE = 3072;
+
+    // ESP-IDF components the generated runtime needs; common components (freertos, log, esp_system...) are always built
+    private static final List<String> RUNTIME_COMPONENTS = List.of(
+            "esp_driver_uart",  // Javono_serial.c
+            "esp_ringbuf",      // Javono_serial.c line buffer
+            "esp_timer"         // Javono_task.c
+    );
+    // ESP-IDF components each javono.lib class needs on the device
+    private static final Map<String, List<String>> LIBRARY_COMPONENTS = Map.of(
+            "GPIO", List.of("esp_driver_gpio")
+    );
+
     private String PROJECT_DIR = "Null Project";
+    private SketchModel sketchModel = SketchModel.empty();
+    private BuildProfile buildProfile = BuildProfile.DEFAULT;
+    private SerialConfig serialConfig = SerialConfig.DEFAULT;
     private String setupMethod = """
             void setup(){
               Javono_serial_init();
@@ -22,12 +60,23 @@ class ProjectCreator {
     private String loopMethod = """
             void loop(){
               const char* line = Javono_serial_read();                
-              Javono_serial_write(line); 
+              Javono_serial_reply(line); 
               Javono_serial_write("hello world"); 
               Javono_serial_write("new world"); 
-              sleep(0.5);
             }
             """;
+    // C source of @JavonoEmbeddedTask methods by function name; the others get placeholderTaskMethod()
+    private final Map<String, String> taskMethods = new LinkedHashMap<>();
+
+    /**
+     * @param buildProfile the profile to build with, or null to keep the profile of the previous build
+     */
+    public File createProject(SketchModel sketchModel, BuildProfile buildProfile, SerialConfig serialConfig) throws IOException {
+        this.sketchModel = sketchModel;
+        this.buildProfile = buildProfile;
+        this.serialConfig = serialConfig;
+        return createProject();
+    }
 
     public File createProject() throws IOException {
         File projectDir = DetectorFacade.getInstance().getProjectDir("ESP32Project");
@@ -35,16 +84,205 @@ class ProjectCreator {
         Path mainDir = projectDir.toPath().resolve("main");
         Files.createDirectories(mainDir);
         LoggerFacade.getInstance().info("Created project directory: " + projectDir.getAbsolutePath());
+        Properties fingerprint = readBuildFingerprint(projectDir);
+        if (this.buildProfile == null) {
+            String previous = fingerprint.getProperty("profile");
+            this.buildProfile = previous != null ? BuildProfile.fromName(previous) : BuildProfile.DEFAULT;
+        }
+        LoggerFacade.getInstance().info("Build profile: " + this.buildProfile.getName());
         if (OS.detect().isWindows()) {
             writeFilesWindows();
         } else {
             writeFilesUnix();
         }
+        warnPlaceholderTasks();
+        writeCallGraph(projectDir);
+        writeLogDictionary(projectDir);
+        updateBuildFingerprint(projectDir, fingerprint);
         return projectDir;
     }
 
+    /**
+     * Records the build profile and a hash of sdkconfig.defaults in .javono/build. ESP-IDF only
+     * reads sdkconfig.defaults when sdkconfig is missing, so a changed fingerprint deletes
+     * sdkconfig and idf.py regenerates it and rebuilds with the new settings.
+     */
+    private void updateBuildFingerprint(File projectDir, Properties previous) throws IOException {
+        Properties fingerprint = new Properties();
+        fingerprint.setProperty("profile", this.buildProfile.getName());
+        fingerprint.setProperty("sdkconfig.defaults.sha256", sha256(sdkconfigDefaults()));
+
+        if (!fingerprint.equals(previous)) {
+            Path sdkconfig = projectDir.toPath().resolve("sdkconfig");
+            if (Files.deleteIfExists(sdkconfig)) {
+                LoggerFacade.getInstance().info("Build profile changed from '" + previous.getProperty("profile", "unknown")
+                        + "' to '" + this.buildProfile.getName() + "'; sdkconfig will be regenerated.");
+            }
+            try (OutputStream out = Files.newOutputStream(fingerprintFile(projectDir))) {
+                fingerprint.store(out, "Javono build fingerprint");
+            }
+        }
+    }
+
+    private static Properties readBuildFingerprint(File projectDir) throws IOException {
+        Properties fingerprint = new Properties();
+        Path file = fingerprintFile(projectDir);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                fingerprint.load(in);
+            }
+        }
+        return fingerprint;
+    }
+
+    private static Path fingerprintFile(File projectDir) {
+        return projectDir.getParentFile().toPath().resolve("build").resolve(FINGERPRINT_FILE);
+    }
+
+    // The console shares UART0 with Javono_serial, so boot and ESP_LOG output use the same rate
+    private String sdkconfigDefaults() {
+        return this.buildProfile.sdkconfigDefaults()
+                + "CONFIG_ESP_CONSOLE_UART_BAUDRATE=" + this.serialConfig.getBaudRate() + "\n";
+    }
+
+    private static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Records the call graph and task entry points of the emitted C code in .javono/build,
+     * so the stack analyzer can bound worst-case stack depth after idf.py build.
+     */
+    private void writeCallGraph(File projectDir) throws IOException {
+        Path buildDir = projectDir.getParentFile().toPath().resolve("build");
+        Files.createDirectories(buildDir);
+
+        Map<String, Set<String>> callGraph = new LinkedHashMap<>(runtimeCallGraph());
+        this.sketchModel.getCallGraph().forEach((caller, callees) ->
+                callGraph.computeIfAbsent(caller, k -> new LinkedHashSet<>()).addAll(callees));
+        for (SketchTask task : placeholderTasks()) {
+            if (task.getPeriodMs() == 0) callGraph.computeIfAbsent(task.getFunction(), k -> new LinkedHashSet<>()).add("vTaskDelay");
+        }
+        for (SketchLogCall call : this.sketchModel.getLogCalls()) {
+            callGraph.computeIfAbsent(call.getFunction(), k -> new LinkedHashSet<>()).add("Javono_log");
+        }
+
+        Properties properties = new Properties();
+        callGraph.forEach((caller, callees) -> properties.setProperty("call." + caller, String.join(",", callees)));
+        properties.setProperty("sketch.functions", String.join(",", this.sketchModel.getCallGraph().keySet()));
+        properties.setProperty("external.functions", String.join(",", externalFunctions(callGraph, this.sketchModel.getCallGraph().keySet())));
+        // The main task's stack size comes from CONFIG_ESP_MAIN_TASK_STACK_SIZE in sdkconfig
+        properties.setProperty("task.main.entry", "app_main");
+        properties.setProperty("task.serial_rx.entry", "Javono_serial_rx_task");
+        properties.setProperty("task.serial_rx.stackSize", String.valueOf(SERIAL_RX_STACK_SIZE));
+        properties.setProperty("task.serial_tx.entry", "Javono_serial_tx_task");
+        properties.setProperty("task.serial_tx.stackSize", String.valueOf(SERIAL_TX_STACK_SIZE));
+        if (telemetryEnabled()) {
+            properties.setProperty("task.telemetry.entry", "Javono_telemetry_task");
+            properties.setProperty("task.telemetry.stackSize", String.valueOf(TELEMETRY_STACK_SIZE));
+        }
+        for (SketchTask task : this.sketchModel.getTasks()) {
+            properties.setProperty("task." + task.getName() + ".entry", task.getFunction());
+            properties.setProperty("task." + task.getName() + ".wrapper", "Javono_task_entry");
+            properties.setProperty("task." + task.getName() + ".stackSize", String.valueOf(task.getStackSize()));
+        }
+
+        Path file = buildDir.resolve(CALL_GRAPH_FILE);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, "Javono generated call graph");
+        }
+        LoggerFacade.getInstance().success("Created: " + file);
+    }
+
+    /**
+     * Stores the Log format strings by ID in .javono/build, where the host decoder finds them.
+     */
+    private void writeLogDictionary(File projectDir) throws IOException {
+        Path buildDir = projectDir.getParentFile().toPath().resolve("build");
+        Files.createDirectories(buildDir);
+
+        Properties properties = new Properties();
+        for (SketchLogMessage message : this.sketchModel.getLogMessages()) {
+            properties.setProperty("log." + message.getId() + ".level", message.getLevel());
+            properties.setProperty("log." + message.getId() + ".format", message.getFormat());
+            properties.setProperty("log." + message.getId() + ".args", String.valueOf(message.getArgumentCount()));
+        }
+
+        Path file = buildDir.resolve(LOG_DICTIONARY_FILE);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, "Javono log dictionary for " + this.sketchModel.getClassName());
+        }
+        LoggerFacade.getInstance().success("Created: " + file);
+    }
+
+    // Calls made by the C emitted below; keep in sync with mainCContent(), serialSourceFile() and taskSourceFile().
+    // Library calls are listed by their real symbol, e.g. xSemaphoreTake as xQueueSemaphoreTake, since
+    // that is the name the stack analyzer looks up
+    private Map<String, Set<String>> runtimeCallGraph() {
+        Map<String, Set<String>> graph = new LinkedHashMap<>();
+        graph.put("app_main", calls("setup", "Javono_task_start", "Javono_telemetry_start"));
+        graph.put("Javono_task_start", calls("xTaskCreatePinnedToCore"));
+        graph.put("Javono_telemetry_start", calls("xTaskCreatePinnedToCore"));
+        graph.put("Javono_telemetry_task", calls("Javono_serial_write", "snprintf", "xTaskDelayUntil", "xTaskGetTickCount",
+                "esp_get_free_heap_size", "esp_get_minimum_free_heap_size", "uxTaskGetStackHighWaterMark"));
+        graph.put("Javono_task_entry", calls("Javono_task_run_free", "Javono_task_run_periodic"));
+        graph.put("Javono_task_run_free", calls("Javono_task_run_body", "esp_timer_get_time", "vTaskDelay"));
+        graph.put("Javono_task_run_periodic", calls("Javono_task_run_body", "esp_timer_get_time", "xTaskDelayUntil", "xTaskGetTickCount"));
+        graph.put("Javono_task_run_body", calls("esp_timer_get_time"));
+        graph.put("setup", calls("Javono_serial_init"));
+        graph.put("loop", calls("Javono_serial_read", "Javono_serial_reply", "Javono_serial_write"));
+        graph.put("Javono_serial_init", calls("uart_param_config", "uart_set_pin", "uart_driver_install", "xRingbufferCreate",
+                "xQueueCreateMutex", "xQueueGenericCreate", "xTaskCreatePinnedToCore", "xQueueSemaphoreTake"));
+        graph.put("Javono_serial_rx_task", calls("Javono_serial_receive", "xQueueReceive", "xQueueGenericReset", "xTaskGetTickCount",
+                "uart_get_buffered_data_len", "uart_read_bytes", "uart_set_baudrate", "uart_flush_input"));
+        graph.put("Javono_serial_tx_task", calls("xRingbufferReceiveUpTo", "uart_write_bytes", "vRingbufferReturnItem"));
+        graph.put("Javono_serial_receive", calls("Javono_serial_handle_line", "Javono_serial_handle_frame", "memchr", "memcpy"));
+        graph.put("Javono_serial_handle_line", calls("Javono_serial_handshake", "Javono_serial_send_text", "Javono_serial_switch_baud_rate",
+                "Javono_serial_queue_line", "memcmp", "strtoul", "xQueueSemaphoreTake", "xQueueGenericSend"));
+        graph.put("Javono_serial_switch_baud_rate", calls("Javono_serial_send_text", "Javono_serial_flush", "snprintf",
+                "xQueueSemaphoreTake", "xQueueGenericSend", "uart_set_baudrate", "xTaskGetTickCount"));
+        graph.put("Javono_serial_handle_frame", calls("Javono_serial_handshake", "Javono_cobs_decode", "Javono_crc16", "Javono_serial_queue_line", "memcmp"));
+        graph.put("Javono_serial_handshake", calls("Javono_serial_send_text", "Javono_serial_grant", "xQueueSemaphoreTake", "xQueueGenericSend"));
+        graph.put("Javono_serial_queue_line", calls("xRingbufferSendAcquire", "xRingbufferSendComplete", "memcpy"));
+        graph.put("Javono_serial_read", calls("Javono_serial_read_data"));
+        graph.put("Javono_serial_read_data", calls("Javono_serial_grant", "xRingbufferReceive", "vRingbufferReturnItem", "memcpy"));
+        graph.put("Javono_serial_grant", calls("Javono_serial_send_frame", "Javono_serial_send_text", "snprintf", "xQueueSemaphoreTake", "xQueueGenericSend"));
+        graph.put("Javono_serial_write", calls("Javono_serial_send_frame", "Javono_serial_send_text", "strlen", "xQueueSemaphoreTake", "xQueueGenericSend"));
+        graph.put("Javono_serial_reply", calls("Javono_serial_write", "Javono_serial_send_frame_parts", "Javono_serial_send", "Javono_serial_send_text",
+                "snprintf", "strlen", "xQueueSemaphoreTake", "xQueueGenericSend"));
+        graph.put("Javono_serial_write_data", calls("Javono_serial_send_frame", "xQueueSemaphoreTake", "xQueueGenericSend"));
+        graph.put("Javono_log", calls("Javono_log_put_varint", "Javono_log_put_int", "Javono_serial_send_frame", "Javono_serial_send_text",
+                "memcpy", "xQueueSemaphoreTake", "xQueueGenericSend"));
+        graph.put("Javono_serial_flush", calls("vTaskDelay", "uart_wait_tx_done"));
+        graph.put("Javono_serial_send_frame", calls("Javono_serial_send_frame_parts"));
+        graph.put("Javono_serial_send_frame_parts", calls("Javono_crc16", "Javono_cobs_put", "Javono_cobs_finish"));
+        graph.put("Javono_serial_send_text", calls("Javono_serial_send"));
+        graph.put("Javono_serial_send", calls("xRingbufferSend"));
+        graph.put("Javono_cobs_put", calls("Javono_serial_send"));
+        graph.put("Javono_cobs_finish", calls("Javono_serial_send"));
+        return graph;
+    }
+
+    // Callees that are not part of the generated C: libc, FreeRTOS and ESP-IDF drivers
+    private static Set<String> externalFunctions(Map<String, Set<String>> callGraph, Set<String> sketchFunctions) {
+        Set<String> external = new LinkedHashSet<>();
+        callGraph.values().forEach(external::addAll);
+        external.removeIf(function -> function.startsWith("Javono_") || callGraph.containsKey(function) || sketchFunctions.contains(function));
+        return external;
+    }
+
+    private static Set<String> calls(String... callees) {
+        return new LinkedHashSet<>(List.of(callees));
+    }
+
     private void writeFilesWindows() throws IOException {
         writeTextFile(this.PROJECT_DIR + "\\CMakeLists.txt", cmakeListsTxtContent());
+        writeTextFile(this.PROJECT_DIR + "\\sdkconfig.defaults", sdkconfigDefaults());
         writeTextFile(this.PROJECT_DIR + "\\LICENSE", licenseContent());
         writeTextFile(this.PROJECT_DIR + "\\README.md", readmeContent());
         writeTextFile(this.PROJECT_DIR + "\\.clangd", clangdContent());
@@ -57,6 +295,9 @@ class ProjectCreator {
         writeTextFile(this.PROJECT_DIR + "\\main\\Kconfig.projbuild", kconfigProjbuildContent());
         writeTextFile(this.PROJECT_DIR + "\\main\\Javono_serial.h", serialHeaderfile());
         writeTextFile(this.PROJECT_DIR + "\\main\\Javono_serial.c", serialSourceFile());
+        writeTextFile(this.PROJECT_DIR + "\\main\\Javono_log.h", logHeaderFile());
+        writeTextFile(this.PROJECT_DIR + "\\main\\Javono_task.h", taskHeaderFile());
+        writeTextFile(this.PROJECT_DIR + "\\main\\Javono_task.c", taskSourceFile());
         writeTextFile(this.PROJECT_DIR + "\\main\\main.c", mainCContent());
 
         LoggerFacade.getInstance().info("Created all project files.");
@@ -64,6 +305,7 @@ class ProjectCreator {
 
     private void writeFilesUnix() throws IOException {
         writeTextFile(this.PROJECT_DIR + "//CMakeLists.txt", cmakeListsTxtContent());
+        writeTextFile(this.PROJECT_DIR + "//sdkconfig.defaults", sdkconfigDefaults());
         writeTextFile(this.PROJECT_DIR + "//LICENSE", licenseContent());
         writeTextFile(this.PROJECT_DIR + "//README.md", readmeContent());
         writeTextFile(this.PROJECT_DIR + "//.clangd", clangdContent());
@@ -76,6 +318,9 @@ class ProjectCreator {
         writeTextFile(this.PROJECT_DIR + "//main//Kconfig.projbuild", kconfigProjbuildContent());
         writeTextFile(this.PROJECT_DIR + "//main//Javono_serial.h", serialHeaderfile());
         writeTextFile(this.PROJECT_DIR + "//main//Javono_serial.c", serialSourceFile());
+        writeTextFile(this.PROJECT_DIR + "//main//Javono_log.h", logHeaderFile());
+        writeTextFile(this.PROJECT_DIR + "//main//Javono_task.h", taskHeaderFile());
+        writeTextFile(this.PROJECT_DIR + "//main//Javono_task.c", taskSourceFile());
         writeTextFile(this.PROJECT_DIR + "//main//main.c", mainCContent());
 
         LoggerFacade.getInstance().info("Created all project files.");
@@ -90,6 +335,10 @@ class ProjectCreator {
         return """
                 cmake_minimum_required(VERSION 3.16)
                 include($ENV{IDF_PATH}/tools/cmake/project.cmake)
+                # Build only main, its REQUIRES and the common components instead of all of ESP-IDF
+                set(COMPONENTS main)
+                # Per-function stack usage (.su files) for Javono's stack analyzer
+                idf_build_set_property(COMPILE_OPTIONS "-fstack-usage" APPEND)
                 project(ESP32Project)
                 """;
     }
@@ -157,9 +406,17 @@ class ProjectCreator {
 
     private String mainCMakeListsTxtContent() {
         return """
-                idf_component_register(SRCS "main.c" Javono_serial.c
-                                       INCLUDE_DIRS "")
-                """;
+                idf_component_register(SRCS "main.c" Javono_serial.c Javono_task.c
+                                       INCLUDE_DIRS ""
+                                       REQUIRES\s""" + String.join(" ", requiredComponents()) + ")\n";
+    }
+
+    private Set<String> requiredComponents() {
+        Set<String> components = new LinkedHashSet<>(RUNTIME_COMPONENTS);
+        for (String libraryClass : this.sketchModel.getLibraryClasses()) {
+            components.addAll(LIBRARY_COMPONENTS.getOrDefault(libraryClass, List.of()));
+        }
+        return components;
     }
 
     private String kconfigProjbuildContent() {
@@ -170,6 +427,9 @@ class ProjectCreator {
         return """
                  #ifndef Javono_SERIAL_H
                   #define Javono_SERIAL_H
+                
+                  #include <stddef.h>
+                  #include <stdint.h>
                   \s
                   /**
                    * @brief Initializing UART0.
@@ -178,140 +438,669 @@ class ProjectCreator {
                   void Javono_serial_init();\s
                 
                   /**
-                   * @brief Reads a line from UART0.
+                   * @brief Reads the next line from UART0, waiting until the host sends one.
+                   * The host may send up to LINE_CREDITS lines ahead; credit is returned as lines are read.
                    * @return Pointer to a static null-terminated string. Overwritten on next call.
                    */
                   const char *Javono_serial_read();
                 
                   /**
-                   * @brief Sends a null-terminated string to UART0.
+                   * @brief Like Javono_serial_read, but also returns the length, for binary payloads
+                   * received in binary mode. The data is followed by a '\\0'.
+                   */
+                  const uint8_t *Javono_serial_read_data(size_t *len);
+                
+                  /**
+                   * @brief Queues a null-terminated string and a newline for UART0.
+                   * Returns without waiting for the UART; blocks only while the TX buffer is full.
                    */
                   void Javono_serial_write(const char *message);
                 
+                  /**
+                   * @brief Answers the line last returned by Javono_serial_read. If the host sent it as a
+                   * request, the reply completes that request on the host; otherwise this is Javono_serial_write.
+                   * Only the first reply to a request is tagged.
+                   */
+                  void Javono_serial_reply(const char *message);
+                
+                  /**
+                   * @brief Waits until everything queued by Javono_serial_write has left UART0.
+                   */
+                  void Javono_serial_flush();
+                
+                  /**
+                   * @brief Queues a binary payload as a DATA frame. Dropped unless the host has
+                   * switched the link to binary mode.
+                   */
+                  void Javono_serial_write_data(const void *data, size_t len);
+                
+                  /**
+                   * @brief Returns the number of frames from the host that were corrupt or missing.
+                   */
+                  uint32_t Javono_serial_lost_frames();
+                
                   #endif // Javono_SERIAL_H
                 
                 """;
     }
 
+    // UART settings from javono.serial.* in .Javono/javono.properties; JavonoSerialThreaded reads the same keys
+    private String uartDefines() {
+        String parity = switch (this.serialConfig.getParity()) {
+            case NONE -> "UART_PARITY_DISABLE";
+            case EVEN -> "UART_PARITY_EVEN";
+            case ODD -> "UART_PARITY_ODD";
+        };
+        // Room for about 20 ms of input, so the RX task can fall behind briefly at high rates
+        int rxBufferSize = Math.max(2048, Integer.highestOneBit(this.serialConfig.getBaudRate() / 500 - 1) << 1);
+        return "#define BAUD_RATE " + this.serialConfig.getBaudRate() + "\n"
+                + "#define UART_DATA_BITS UART_DATA_" + this.serialConfig.getDataBits() + "_BITS\n"
+                + "#define UART_PARITY " + parity + "\n"
+                + "#define UART_STOP_BITS UART_STOP_BITS_" + this.serialConfig.getStopBits() + "\n"
+                + "#define UART_RX_BUF_SIZE " + rxBufferSize + "\n";
+    }
+
+    // Quoted and escaped like a C string, so the line never ends in a backslash that would splice
+    // the next #define into the comment
+    private static String commentText(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r") + "\"";
+    }
+
+    // IDs for the sketch's Log formats, in the order SketchValidator assigned them
+    private String logHeaderFile() {
+        StringBuilder ids = new StringBuilder();
+        for (SketchLogMessage message : this.sketchModel.getLogMessages()) {
+            ids.append("#define JAVONO_LOG_").append(message.getId()).append(' ').append(message.getId())
+                    .append(" // ").append(message.getLevel()).append(": ")
+                    .append(commentText(message.getFormat())).append('\n');
+        }
+        return """
+                #ifndef Javono_LOG_H
+                #define Javono_LOG_H
+                
+                #include <stdint.h>
+                
+                #define JAVONO_LOG_MAX_ARGS 8
+                
+                // Only the host formats log messages, from .javono/build/log-dictionary.properties
+                """ + ids + """
+                
+                /**
+                 * @brief Sends log message id with argc int32_t arguments. In binary mode this is a LOG
+                 * frame (id little-endian, then each argument as a zigzag varint), in text mode a
+                 * "Javono_log <id> <args...>" line.
+                 */
+                void Javono_log(uint16_t id, int argc, ...);
+                
+                #endif // Javono_LOG_H
+                """;
+    }
+
     private String serialSourceFile() {
         return """
                 #include "Javono_serial.h"
+                #include "Javono_log.h"
                 #include "driver/uart.h"
                 #include "freertos/FreeRTOS.h"
+                #include "freertos/queue.h"
+                #include "freertos/ringbuf.h"
+                #include "freertos/semphr.h"
                 #include "freertos/task.h"
+                #include <stdarg.h>
+                #include <stdatomic.h>
+                #include <stdbool.h>
+                #include <stdio.h>
+                #include <stdlib.h>
                 #include <string.h>
                 
                 #define BUF_SIZE 512
-                #define UART_NUM UART_NUM_0              
+                #define UART_NUM UART_NUM_0
+                #define UART_EVENT_QUEUE_LEN 20
+                // Lines the host may send ahead of Javono_serial_read; the line ring holds that many full lines
+                #define LINE_CREDITS 8
+                #define CREDIT_BATCH (LINE_CREDITS / 2)
+                // Each item is the request id, the line and its terminator, plus the ring's own header
+                #define LINE_RING_SIZE ((LINE_CREDITS + 1) * (BUF_SIZE + 12))
+                #define RX_TASK_PRIORITY 10
+                // Bytes waiting for the TX task, and the most it hands to uart_write_bytes at once
+                #define TX_RING_SIZE 4096
+                #define TX_BATCH_SIZE 1024
+                #define TX_TASK_PRIORITY 9
+                // How long a new baud rate may go unconfirmed by a handshake before reverting to BAUD_RATE
+                #define BAUD_CONFIRM_MS 1500
+                """ + "#define RX_TASK_STACK_SIZE " + SERIAL_RX_STACK_SIZE + "\n"
+                + "#define TX_TASK_STACK_SIZE " + SERIAL_TX_STACK_SIZE + "\n" + uartDefines() + """
+                
+                // Binary mode frame: COBS(type, sequence, payload, CRC16-CCITT little-endian) followed by 0x00
+                #define FRAME_TEXT 0x01
+                #define FRAME_CREDIT 0x02
+                #define FRAME_DATA 0x03
+                #define FRAME_LOG 0x04
+                // Host to device: request id (uint16 little-endian) and a line; answered with a RESPONSE frame
+                #define FRAME_REQUEST 0x05
+                #define FRAME_RESPONSE 0x06
+                #define LOG_PREFIX "Javono_log "
+                #define REQUEST_PREFIX "Javono_req "
+                #define RESPONSE_PREFIX "Javono_rsp "
+                #define FRAME_OVERHEAD 4
+                #define FRAME_BUF_SIZE (BUF_SIZE + FRAME_OVERHEAD + (BUF_SIZE + FRAME_OVERHEAD) / 254 + 1)
+                
+                static QueueHandle_t uart_events;
+                static RingbufHandle_t line_ring;
+                static SemaphoreHandle_t handshake_done;
+                
+                static atomic_uint lines_queued = 0;
+                // Request id of the line last read, or 0; only the reading task touches it
+                static uint16_t current_request = 0;
+                // Lines read since credits were last returned to the host
+                static atomic_uint credits_owed = 0;
+                
+                static RingbufHandle_t tx_ring;
+                static SemaphoreHandle_t tx_lock;
+                // Bytes queued by Javono_serial_write that the TX task has not written yet
+                static atomic_size_t tx_pending = 0;
+                
+                // Switched by the RX task with tx_lock held; every handshake returns to text mode
+                static atomic_bool binary_mode = false;
+                static uint8_t tx_sequence = 0;
+                static uint8_t rx_sequence = 0;
+                static atomic_uint rx_lost_frames = 0;
+                
+                // Set by the RX task after a baud switch until the host handshakes at the new rate
+                static bool baud_unconfirmed = false;
+                static TickType_t baud_deadline;
+                
+                // Line or frame being assembled by the RX task; only the RX task touches it
+                static uint8_t pending[FRAME_BUF_SIZE];
+                static size_t pending_len = 0;
+                static bool pending_overflow = false;
+                
+                // COBS block of the frame being queued; only used with tx_lock held
+                static uint8_t cobs_block[255];
+                static size_t cobs_len = 1;
+                
+                static uint16_t Javono_crc16(uint16_t crc, const uint8_t *data, size_t len) {
+                    while (len--) {
+                        crc ^= (uint16_t)(*data++) << 8;
+                        for (int bit = 0; bit < 8; bit++) {
+                            crc = (crc & 0x8000) ? (crc << 1) ^ 0x1021 : crc << 1;
+                        }
+                    }
+                    return crc;
+                }
+                
+                // Decodes a COBS frame in place and returns its length, or -1 if it is malformed
+                static int Javono_cobs_decode(uint8_t *data, size_t len) {
+                    size_t in = 0;
+                    size_t out = 0;
+                    while (in < len) {
+                        uint8_t code = data[in++];
+                        if (code == 0 || in + code - 1 > len) return -1;
+                        for (uint8_t i = 1; i < code; i++) {
+                            data[out++] = data[in++];
+                        }
+                        if (code != 0xFF && in < len) data[out++] = 0;
+                    }
+                    return (int)out;
+                }
+                
+                // Blocks only while the TX ring is full
+                static void Javono_serial_send(const void *data, size_t len) {
+                    const uint8_t *bytes = (const uint8_t *)data;
+                    while (len > 0) {
+                        size_t count = len < TX_RING_SIZE / 2 ? len : TX_RING_SIZE / 2;
+                        atomic_fetch_add(&tx_pending, count);
+                        xRingbufferSend(tx_ring, bytes, count, portMAX_DELAY);
+                        bytes += count;
+                        len -= count;
+                    }
+                }
+                
+                static void Javono_serial_send_text(const char *text, size_t len) {
+                    Javono_serial_send(text, len);
+                    Javono_serial_send("\\n", 1);
+                }
+                
+                static void Javono_cobs_put(uint8_t byte) {
+                    if (byte != 0) cobs_block[cobs_len++] = byte;
+                    if (byte == 0 || cobs_len == sizeof(cobs_block)) {
+                        cobs_block[0] = (uint8_t)cobs_len;
+                        Javono_serial_send(cobs_block, cobs_len);
+                        cobs_len = 1;
+                    }
+                }
+                
+                static void Javono_cobs_finish() {
+                    cobs_block[0] = (uint8_t)cobs_len;
+                    cobs_block[cobs_len] = 0;
+                    Javono_serial_send(cobs_block, cobs_len + 1);
+                    cobs_len = 1;
+                }
+                
+                // The payload is head followed by body, so callers need not copy them together
+                static void Javono_serial_send_frame_parts(uint8_t type, const uint8_t *head, size_t head_len,
+                                                           const void *body, size_t len) {
+                    const uint8_t *bytes = (const uint8_t *)body;
+                    uint8_t header[2] = {type, tx_sequence++};
+                    uint16_t crc = Javono_crc16(Javono_crc16(Javono_crc16(0xFFFF, header, 2), head, head_len), bytes, len);
+                
+                    Javono_cobs_put(header[0]);
+                    Javono_cobs_put(header[1]);
+                    for (size_t i = 0; i < head_len; i++) {
+                        Javono_cobs_put(head[i]);
+                    }
+                    for (size_t i = 0; i < len; i++) {
+                        Javono_cobs_put(bytes[i]);
+                    }
+                    Javono_cobs_put(crc & 0xFF);
+                    Javono_cobs_put(crc >> 8);
+                    Javono_cobs_finish();
+                }
+                
+                static void Javono_serial_send_frame(uint8_t type, const void *payload, size_t len) {
+                    Javono_serial_send_frame_parts(type, NULL, 0, payload, len);
+                }
+                
+                // Allows the host to send this many more lines
+                static void Javono_serial_grant(unsigned lines) {
+                    xSemaphoreTake(tx_lock, portMAX_DELAY);
+                    if (atomic_load(&binary_mode)) {
+                        uint8_t count[2] = {lines & 0xFF, lines >> 8};
+                        Javono_serial_send_frame(FRAME_CREDIT, count, sizeof(count));
+                    } else {
+                        char message[32];
+                        int len = snprintf(message, sizeof(message), "Javono_credit %u", lines);
+                        Javono_serial_send_text(message, len);
+                    }
+                    xSemaphoreGive(tx_lock);
+                }
+                
+                static void Javono_serial_handshake() {
+                    baud_unconfirmed = false;
+                    xSemaphoreTake(tx_lock, portMAX_DELAY);
+                    atomic_store(&binary_mode, false);
+                    Javono_serial_send_text("thunder", strlen("thunder"));
+                    xSemaphoreGive(tx_lock);
+                
+                    // A (re)connected host starts without credit; grant the free part of the line ring
+                    atomic_store(&credits_owed, 0);
+                    Javono_serial_grant(LINE_CREDITS - atomic_load(&lines_queued));
+                    xSemaphoreGive(handshake_done);
+                }
+                
+                // Stored as the request id, the line and a '\\0'
+                static void Javono_serial_queue_line(uint16_t request, const char *line, size_t len) {
+                    // Only a host ignoring its credit can overflow the ring; such lines are dropped
+                    atomic_fetch_add(&lines_queued, 1);
+                    void *item = NULL;
+                    if (xRingbufferSendAcquire(line_ring, &item, len + 3, 0) != pdTRUE) {
+                        atomic_fetch_sub(&lines_queued, 1);
+                        return;
+                    }
+                    uint8_t *bytes = (uint8_t *)item;
+                    bytes[0] = request & 0xFF;
+                    bytes[1] = request >> 8;
+                    memcpy(bytes + 2, line, len);
+                    bytes[len + 2] = '\\0';
+                    xRingbufferSendComplete(line_ring, item);
+                }
+                
+                // Answers at the current rate, then switches; the host must handshake at the new rate
+                static void Javono_serial_switch_baud_rate(uint32_t baud_rate) {
+                    if (baud_rate == 0 || baud_rate > 5000000) return;
+                    char reply[32];
+                    int len = snprintf(reply, sizeof(reply), "Javono_baud %lu", (unsigned long)baud_rate);
                 
-                static char internal_buffer[BUF_SIZE];              
+                    xSemaphoreTake(tx_lock, portMAX_DELAY);
+                    Javono_serial_send_text(reply, len);
+                    xSemaphoreGive(tx_lock);
+                    Javono_serial_flush();
+                
+                    uart_set_baudrate(UART_NUM, baud_rate);
+                    baud_unconfirmed = true;
+                    baud_deadline = xTaskGetTickCount() + pdMS_TO_TICKS(BAUD_CONFIRM_MS);
+                }
+                
+                static void Javono_serial_handle_line(const char *line, size_t len) {
+                    // The host wraps its handshake in '\\0' so a device in binary mode sees it as a frame
+                    while (len > 0 && line[0] == '\\0') {
+                        line++;
+                        len--;
+                    }
+                    // Handle internal Javono commands
+                    if (len == 5 && memcmp(line, "flash", 5) == 0) {
+                        Javono_serial_handshake();
+                        return;
+                    }
+                    if (len == 13 && memcmp(line, "Javono_binary", 13) == 0) {
+                        xSemaphoreTake(tx_lock, portMAX_DELAY);
+                        Javono_serial_send_text("Javono_binary", 13);
+                        tx_sequence = 0;
+                        rx_sequence = 0;
+                        atomic_store(&binary_mode, true);
+                        xSemaphoreGive(tx_lock);
+                        return;
+                    }
+                    if (len > 12 && memcmp(line, "Javono_baud ", 12) == 0) {
+                        Javono_serial_switch_baud_rate(strtoul(line + 12, NULL, 10));
+                        return;
+                    }
+                    // Until the host confirms a new rate, anything else may be noise from a rate mismatch
+                    if (baud_unconfirmed) return;
+                    size_t prefix_len = sizeof(REQUEST_PREFIX) - 1;
+                    if (len > prefix_len && memcmp(line, REQUEST_PREFIX, prefix_len) == 0) {
+                        // "Javono_req <id> <line>"
+                        char *command = NULL;
+                        unsigned long request = strtoul(line + prefix_len, &command, 10);
+                        if (request == 0 || request > 0xFFFF || *command != ' ') return;
+                        command++;
+                        Javono_serial_queue_line((uint16_t)request, command, len - (command - line));
+                        return;
+                    }
+                    Javono_serial_queue_line(0, line, len);
+                }
+                
+                static void Javono_serial_handle_frame(uint8_t *frame, size_t len) {
+                    // A host that does not know the mode sends its handshake as plain text between delimiters
+                    if (len == 6 && memcmp(frame, "flash\\n", 6) == 0) {
+                        Javono_serial_handshake();
+                        return;
+                    }
+                    int decoded = Javono_cobs_decode(frame, len);
+                    if (decoded < 0 || (decoded > 0 && decoded < FRAME_OVERHEAD)) {
+                        atomic_fetch_add(&rx_lost_frames, 1);
+                        return;
+                    }
+                    if (decoded == 0) return;
+                
+                    uint16_t crc = frame[decoded - 2] | (frame[decoded - 1] << 8);
+                    if (Javono_crc16(0xFFFF, frame, decoded - 2) != crc) {
+                        atomic_fetch_add(&rx_lost_frames, 1);
+                        return;
+                    }
+                    uint8_t type = frame[0];
+                    uint8_t sequence = frame[1];
+                    atomic_fetch_add(&rx_lost_frames, (uint8_t)(sequence - rx_sequence));
+                    rx_sequence = sequence + 1;
                 
-                bool Javono_serial_read_line(char *out, size_t maxLen) {
-                    int index = 0;
-                    char c;
+                    size_t payload_len = decoded - FRAME_OVERHEAD;
+                    if ((type == FRAME_TEXT || type == FRAME_DATA) && payload_len < BUF_SIZE) {
+                        Javono_serial_queue_line(0, (const char *)frame + 2, payload_len);
+                    } else if (type == FRAME_REQUEST && payload_len >= 2 && payload_len < BUF_SIZE + 2) {
+                        uint16_t request = frame[2] | (frame[3] << 8);
+                        if (request != 0) Javono_serial_queue_line(request, (const char *)frame + 4, payload_len - 2);
+                    }
+                }
+                
+                // Splits received bytes into lines (text mode) or frames (binary mode) in memory
+                static void Javono_serial_receive(const uint8_t *data, size_t len) {
+                    const uint8_t *end = data + len;
+                    while (data < end) {
+                        bool binary = atomic_load(&binary_mode);
+                        const uint8_t *delimiter = memchr(data, binary ? 0 : '\\n', end - data);
+                        const uint8_t *stop = delimiter ? delimiter : end;
+                
+                        // Long text lines are truncated; frames that do not fit are dropped
+                        size_t count = stop - data;
+                        size_t room = (binary ? FRAME_BUF_SIZE : BUF_SIZE - 1) - pending_len;
+                        if (count > room) {
+                            pending_overflow = binary;
+                            count = room;
+                        }
+                        memcpy(pending + pending_len, data, count);
+                        pending_len += count;
+                        if (delimiter == NULL) return;
+                
+                        if (binary) {
+                            if (pending_overflow) {
+                                atomic_fetch_add(&rx_lost_frames, 1);
+                            } else {
+                                Javono_serial_handle_frame(pending, pending_len);
+                            }
+                        } else {
+                            if (pending_len > 0 && pending[pending_len - 1] == '\\r') pending_len--;
+                            pending[pending_len] = '\\0';
+                            Javono_serial_handle_line((const char *)pending, pending_len);
+                        }
+                        pending_len = 0;
+                        pending_overflow = false;
+                        data = delimiter + 1;
+                    }
+                }
+                
+                static void Javono_serial_rx_task(void *arg) {
+                    static uint8_t chunk[UART_RX_BUF_SIZE];
+                    uart_event_t event;
                     while (true) {
-                        int len = uart_read_bytes(UART_NUM_0, (uint8_t *)&c, 1, 100 / portTICK_PERIOD_MS);
-                        if (len > 0) {
-                            if (c == '\\n') {
-                                out[index] = '\\0';
-                                return true;
+                        TickType_t wait = portMAX_DELAY;
+                        if (baud_unconfirmed) {
+                            TickType_t now = xTaskGetTickCount();
+                            if ((int32_t)(baud_deadline - now) <= 0) {
+                                // The host never arrived at the new rate; go back to where it will look for us
+                                uart_set_baudrate(UART_NUM, BAUD_RATE);
+                                uart_flush_input(UART_NUM);
+                                pending_len = 0;
+                                baud_unconfirmed = false;
+                                continue;
                             }
-                            if (c != '\\r' && index < maxLen - 1) {
-                                out[index++] = c;
+                            wait = baud_deadline - now;
+                        }
+                        if (xQueueReceive(uart_events, &event, wait) != pdTRUE) continue;
+                        switch (event.type) {
+                            case UART_DATA: {
+                                // Drain everything the driver holds, not just this event's bytes
+                                size_t available = 0;
+                                uart_get_buffered_data_len(UART_NUM, &available);
+                                while (available > 0) {
+                                    int len = uart_read_bytes(UART_NUM, chunk, available < sizeof(chunk) ? available : sizeof(chunk), 0);
+                                    if (len <= 0) break;
+                                    Javono_serial_receive(chunk, len);
+                                    uart_get_buffered_data_len(UART_NUM, &available);
+                                }
+                                break;
                             }
+                            case UART_FIFO_OVF:
+                            case UART_BUFFER_FULL:
+                                // Bytes were lost; drop the partial line instead of splicing two lines
+                                uart_flush_input(UART_NUM);
+                                xQueueReset(uart_events);
+                                pending_len = 0;
+                                break;
+                            default:
+                                break;
                         }
                     }
                 }
                 
+                static void Javono_serial_tx_task(void *arg) {
+                    while (true) {
+                        // Takes everything queued so far, up to TX_BATCH_SIZE, and writes it in one call
+                        size_t len = 0;
+                        uint8_t *data = (uint8_t *)xRingbufferReceiveUpTo(tx_ring, &len, portMAX_DELAY, TX_BATCH_SIZE);
+                        if (data == NULL) continue;
+                        uart_write_bytes(UART_NUM, data, len);
+                        vRingbufferReturnItem(tx_ring, data);
+                        atomic_fetch_sub(&tx_pending, len);
+                    }
+                }
                 
-                void Javono_serial_init() {                \s
+                void Javono_serial_init() {
                     static bool initialized = false;
                     if (initialized) return;
                 
                     uart_config_t uart_config = {
-                        .baud_rate = 115200,
-                        .data_bits = UART_DATA_8_BITS,
-                        .parity = UART_PARITY_DISABLE,
-                        .stop_bits = UART_STOP_BITS_1,
+                        .baud_rate = BAUD_RATE,
+                        .data_bits = UART_DATA_BITS,
+                        .parity = UART_PARITY,
+                        .stop_bits = UART_STOP_BITS,
                         .flow_ctrl = UART_HW_FLOWCTRL_DISABLE
                     };
                 
-                    uart_param_config(UART_NUM_0, &uart_config);
-                    uart_set_pin(UART_NUM_0, UART_PIN_NO_CHANGE, UART_PIN_NO_CHANGE,
+                    uart_param_config(UART_NUM, &uart_config);
+                    uart_set_pin(UART_NUM, UART_PIN_NO_CHANGE, UART_PIN_NO_CHANGE,
                                  UART_PIN_NO_CHANGE, UART_PIN_NO_CHANGE);
-                    uart_driver_install(UART_NUM_0, BUF_SIZE * 2, 0, 0, NULL, 0);
+                    uart_driver_install(UART_NUM, UART_RX_BUF_SIZE, 0, UART_EVENT_QUEUE_LEN, &uart_events, 0);
                 
-                    // Block here until "flash" is received
-                    char buffer[64];
-                    while (true) {
-                        if (Javono_serial_read_line(buffer, sizeof(buffer))) {
-                            if (strcmp(buffer, "flash") == 0) {
+                    tx_ring = xRingbufferCreate(TX_RING_SIZE, RINGBUF_TYPE_BYTEBUF);
+                    tx_lock = xSemaphoreCreateMutex();
+                    xTaskCreate(Javono_serial_tx_task, "javono_tx", TX_TASK_STACK_SIZE, NULL, TX_TASK_PRIORITY, NULL);
                 
-                                uart_write_bytes(UART_NUM_0, "thunder\\n", strlen("thunder\\n"));
-                                uart_wait_tx_done(UART_NUM_0, pdMS_TO_TICKS(50));
-                                break;
-                            }
-                        }
-                    }
+                    line_ring = xRingbufferCreate(LINE_RING_SIZE, RINGBUF_TYPE_NOSPLIT);
+                    handshake_done = xSemaphoreCreateBinary();
+                    xTaskCreate(Javono_serial_rx_task, "javono_rx", RX_TASK_STACK_SIZE, NULL, RX_TASK_PRIORITY, NULL);
                 
+                    // Block here until "flash" is received
+                    xSemaphoreTake(handshake_done, portMAX_DELAY);
                     initialized = true;
                 }
                 
-                const char* Javono_serial_read() {
-                    static char buffer[BUF_SIZE];
-                    static int index = 0;
+                const uint8_t* Javono_serial_read_data(size_t *len) {
+                    static uint8_t buffer[BUF_SIZE];
+                
+                    size_t item_len = 0;
+                    uint8_t *item = (uint8_t *)xRingbufferReceive(line_ring, &item_len, portMAX_DELAY);
+                    current_request = item[0] | (item[1] << 8);
+                    memcpy(buffer, item + 2, item_len - 2);
+                    vRingbufferReturnItem(line_ring, item);
+                    atomic_fetch_sub(&lines_queued, 1);
+                    if (len) *len = item_len - 3;
                 
-                    // Send "ready" to host to indicate ESP32 is ready for a command
+                    // Return credit in batches so the host keeps lines in flight without a round trip per line
+                    unsigned owed = atomic_fetch_add(&credits_owed, 1) + 1;
+                    if (owed >= CREDIT_BATCH && atomic_compare_exchange_strong(&credits_owed, &owed, 0)) {
+                        Javono_serial_grant(owed);
+                    }
+                    return buffer;
+                }
                 
-                    uart_write_bytes(UART_NUM, "Javono_read\\n", strlen("Javono_read\\n"));
-                     uart_wait_tx_done(UART_NUM, pdMS_TO_TICKS(50));
+                const char* Javono_serial_read() {
+                    return (const char *)Javono_serial_read_data(NULL);
+                }
                 
-                    while (1) {
-                        uint8_t ch;
-                        int len = uart_read_bytes(UART_NUM_0, &ch, 1, portMAX_DELAY); // wait forever
+                void Javono_serial_write(const char *message) {
+                    if (tx_ring == NULL || message == NULL) return;
+                    size_t len = strlen(message);
+                    if (len == 0) return;
                 
-                        if (len > 0) {
-                            if (ch == '\\r') continue; // skip CR
+                    // Keeps each message together when several tasks write
+                    xSemaphoreTake(tx_lock, portMAX_DELAY);
+                    if (atomic_load(&binary_mode)) {
+                        Javono_serial_send_frame(FRAME_TEXT, message, len);
+                    } else {
+                        Javono_serial_send_text(message, len);
+                    }
+                    xSemaphoreGive(tx_lock);
+                }
                 
-                            if (ch == '\\n') {
-                                buffer[index] = '\\0';
-                                index = 0;
+                void Javono_serial_reply(const char *message) {
+                    if (tx_ring == NULL || message == NULL) return;
+                    uint16_t request = current_request;
+                    if (request == 0) {
+                        Javono_serial_write(message);
+                        return;
+                    }
+                    current_request = 0;
                 
-                                // Handle internal Javono command
-                                if (strcmp(buffer, "flash") == 0) {
-                                    Javono_serial_write("thunder");
-                                    return NULL; // Skip this one, ask for next
-                                }
+                    // Unlike Javono_serial_write, an empty reply is sent: it still completes the request
+                    size_t len = strlen(message);
+                    xSemaphoreTake(tx_lock, portMAX_DELAY);
+                    if (atomic_load(&binary_mode)) {
+                        uint8_t id[2] = {request & 0xFF, request >> 8};
+                        Javono_serial_send_frame_parts(FRAME_RESPONSE, id, sizeof(id), message, len);
+                    } else {
+                        char prefix[sizeof(RESPONSE_PREFIX) + 6];
+                        int prefix_len = snprintf(prefix, sizeof(prefix), RESPONSE_PREFIX "%u ", (unsigned)request);
+                        Javono_serial_send(prefix, prefix_len);
+                        Javono_serial_send_text(message, len);
+                    }
+                    xSemaphoreGive(tx_lock);
+                }
                 
-                                return buffer;
-                            }
+                void Javono_serial_write_data(const void *data, size_t len) {
+                    if (tx_ring == NULL || data == NULL) return;
+                    xSemaphoreTake(tx_lock, portMAX_DELAY);
+                    if (atomic_load(&binary_mode)) {
+                        Javono_serial_send_frame(FRAME_DATA, data, len);
+                    }
+                    xSemaphoreGive(tx_lock);
+                }
                 
-                            if (index < BUF_SIZE - 1) {
-                                buffer[index++] = ch;
-                            }
-                        }
+                static size_t Javono_log_put_varint(uint8_t *out, int32_t value) {
+                    // Zigzag, so small negative numbers stay short too
+                    uint32_t zigzag = ((uint32_t)value << 1) ^ (uint32_t)(value >> 31);
+                    size_t len = 0;
+                    while (zigzag >= 0x80) {
+                        out[len++] = (uint8_t)(zigzag | 0x80);
+                        zigzag >>= 7;
                     }
+                    out[len++] = (uint8_t)zigzag;
+                    return len;
                 }
                 
+                static size_t Javono_log_put_int(char *out, int32_t value) {
+                    char digits[10];
+                    size_t len = 0, count = 0;
+                    uint32_t magnitude = value < 0 ? 0u - (uint32_t)value : (uint32_t)value;
+                    if (value < 0) out[len++] = '-';
+                    do {
+                        digits[count++] = (char)('0' + magnitude % 10);
+                        magnitude /= 10;
+                    } while (magnitude > 0);
+                    while (count > 0) out[len++] = digits[--count];
+                    return len;
+                }
                 
-                void Javono_serial_write(const char *message) {
-                    if (message && strlen(message) > 0) {
-                        char buffer[512];  // Adjust size as needed
-                        snprintf(buffer, sizeof(buffer), "%s\\n", message);
+                void Javono_log(uint16_t id, int argc, ...) {
+                    if (tx_ring == NULL) return;
+                    if (argc > JAVONO_LOG_MAX_ARGS) argc = JAVONO_LOG_MAX_ARGS;
+                    int32_t args[JAVONO_LOG_MAX_ARGS];
+                    va_list list;
+                    va_start(list, argc);
+                    for (int i = 0; i < argc; i++) args[i] = va_arg(list, int32_t);
+                    va_end(list);
                 
-                        uart_write_bytes(UART_NUM, buffer, strlen(buffer));
-                        uart_wait_tx_done(UART_NUM, pdMS_TO_TICKS(50));
+                    xSemaphoreTake(tx_lock, portMAX_DELAY);
+                    if (atomic_load(&binary_mode)) {
+                        uint8_t payload[2 + JAVONO_LOG_MAX_ARGS * 5];
+                        size_t len = 0;
+                        payload[len++] = (uint8_t)id;
+                        payload[len++] = (uint8_t)(id >> 8);
+                        for (int i = 0; i < argc; i++) len += Javono_log_put_varint(payload + len, args[i]);
+                        Javono_serial_send_frame(FRAME_LOG, payload, len);
+                    } else {
+                        char line[sizeof(LOG_PREFIX) + 6 + JAVONO_LOG_MAX_ARGS * 12];
+                        size_t len = sizeof(LOG_PREFIX) - 1;
+                        memcpy(line, LOG_PREFIX, len);
+                        len += Javono_log_put_int(line + len, id);
+                        for (int i = 0; i < argc; i++) {
+                            line[len++] = ' ';
+                            len += Javono_log_put_int(line + len, args[i]);
+                        }
+                        Javono_serial_send_text(line, len);
                     }
+                    xSemaphoreGive(tx_lock);
                 }
                 
+                void Javono_serial_flush() {
+                    if (tx_ring == NULL) return;
+                    while (atomic_load(&tx_pending) > 0) {
+                        vTaskDelay(1);
+                    }
+                    uart_wait_tx_done(UART_NUM, portMAX_DELAY);
+                }
                 
+                uint32_t Javono_serial_lost_frames() {
+                    return atomic_load(&rx_lost_frames);
+                }
                 """;
     }
 
     private String mainCContent() {
         return """
                 #include "esp_log.h"
+                #include "Javono_log.h"
                 #include "Javono_serial.h"
+                #include "Javono_task.h"
                 #include <stdbool.h>
                 #include <stdio.h>
                 #include <string.h>
@@ -319,17 +1108,302 @@ class ProjectCreator {
                 #include <unistd.h>                              
                 
                 void setup(void);
-                void loop(void);
+                """ + taskDeclarations() + """
                 
                 void app_main(void) {
                   setup();
-                  while (true) {                                      
-                  loop();               
-                  }
+                """ + taskStarts() + (telemetryEnabled() ? "  Javono_telemetry_start();\n" : "") + """
+                }
+                """ + withLogCalls(this.setupMethod, "setup") + "\n" + """
+                """ + withLogCalls(this.loopMethod, "loop") + "\n" + taskMethods() + """
+                
+                """;
+    }
+
+    // Bodies for @JavonoEmbeddedTask methods; the loop task uses loopMethod
+    private String taskMethods() {
+        StringBuilder methods = new StringBuilder();
+        for (SketchTask task : this.sketchModel.getTasks()) {
+            if (task.getFunction().equals("loop")) continue;
+            String method = this.taskMethods.get(task.getFunction());
+            methods.append(method != null ? method : placeholderTaskMethod(task)).append("\n");
+        }
+        return methods.toString();
+    }
+
+    /**
+     * Sketch method bodies are not translated to C yet, so a task without a body from
+     * setTaskMethod() runs this one. The task is still created with its stack, priority and core.
+     * A free-running placeholder sleeps for a tick instead of spinning on its core.
+     */
+    private String placeholderTaskMethod(SketchTask task) {
+        String body = task.getPeriodMs() == 0 ? "  vTaskDelay(1);\n" : "";
+        return withLogCalls("void " + task.getFunction() + "(){\n" + body + "}\n", task.getFunction());
+    }
+
+    // Adds the function's Log calls, the only sketch statements generated so far, at the end of its body
+    private String withLogCalls(String method, String function) {
+        StringBuilder calls = new StringBuilder();
+        for (SketchLogCall call : this.sketchModel.getLogCalls(function)) {
+            calls.append("  Javono_log(JAVONO_LOG_").append(call.getMessageId()).append(", ").append(call.getArguments().size());
+            for (int argument : call.getArguments()) {
+                calls.append(", (int32_t)").append(argument);
+            }
+            calls.append(");\n");
+        }
+        int end = method.lastIndexOf('}');
+        return calls.isEmpty() || end < 0 ? method : method.substring(0, end) + calls + method.substring(end);
+    }
+
+    private List<SketchTask> placeholderTasks() {
+        return this.sketchModel.getTasks().stream()
+                .filter(task -> !task.getFunction().equals("loop") && !this.taskMethods.containsKey(task.getFunction()))
+                .toList();
+    }
+
+    private void warnPlaceholderTasks() {
+        for (SketchTask task : placeholderTasks()) {
+            LoggerFacade.getInstance().warn("@JavonoEmbeddedTask " + task.getFunction()
+                    + " runs a placeholder body on the device: task bodies are not generated yet.");
+        }
+    }
+
+    private String taskDeclarations() {
+        StringBuilder declarations = new StringBuilder();
+        for (SketchTask task : this.sketchModel.getTasks()) {
+            declarations.append("void ").append(task.getFunction()).append("(void);\n");
+        }
+        for (SketchTask task : this.sketchModel.getTasks()) {
+            declarations.append("static Javono_task_t ").append(task.getName()).append("_task = JAVONO_TASK(\"")
+                    .append(task.getName()).append("\", ").append(task.getFunction()).append(", ")
+                    .append(task.getPeriodMs()).append(");\n");
+        }
+        return declarations.toString();
+    }
+
+    // app_main returns after starting the loop tasks; ESP-IDF then deletes the main task
+    private String taskStarts() {
+        StringBuilder starts = new StringBuilder();
+        for (SketchTask task : this.sketchModel.getTasks()) {
+            starts.append("  Javono_task_start(&").append(task.getName()).append("_task, ")
+                    .append(task.getStackSize()).append(", ").append(task.getPriority()).append(", ")
+                    .append(task.getCore() == SketchTask.NO_AFFINITY ? "tskNO_AFFINITY" : String.valueOf(task.getCore()))
+                    .append(");\n");
+        }
+        return starts.toString();
+    }
+
+    private boolean telemetryEnabled() {
+        return this.serialConfig.getTelemetryIntervalMs() > 0;
+    }
+
+    // Loop timing telemetry is compiled in only when javono.serial.telemetryIntervalMs is set
+    private String telemetryDefines() {
+        if (!telemetryEnabled()) return "#define JAVONO_TELEMETRY 0\n";
+        return "#define JAVONO_TELEMETRY 1\n"
+                + "#define JAVONO_TELEMETRY_INTERVAL_MS " + this.serialConfig.getTelemetryIntervalMs() + "\n";
+    }
+
+    private String taskHeaderFile() {
+        return """
+                #ifndef Javono_TASK_H
+                #define Javono_TASK_H
+                
+                #include <stdint.h>
+                #include "freertos/FreeRTOS.h"
+                #include "freertos/task.h"
+                
+                """ + telemetryDefines() + """
+                // Iteration times are counted in buckets [2^i, 2^(i+1)) us; the last bucket also takes anything longer
+                #define JAVONO_TELEMETRY_BUCKETS 20
+                
+                /**
+                 * @brief A sketch loop running in its own FreeRTOS task.
+                 * period_ms == 0 runs the body back to back, blocking for one tick every
+                 * JAVONO_TASK_YIELD_US so the idle task can feed the task watchdog.
+                 */
+                typedef struct {
+                    const char *name;
+                    void (*body)(void);
+                    uint32_t period_ms;
+                    volatile uint32_t iterations;
+                    volatile uint32_t overruns;      // iterations that ended after the next release time
+                    volatile int64_t max_jitter_us;  // worst lateness of an iteration start
+                    uint32_t stack_size;
+                    TaskHandle_t handle;
+                #if JAVONO_TELEMETRY
+                    volatile uint32_t histogram[JAVONO_TELEMETRY_BUCKETS];
+                    volatile uint32_t max_us;        // longest iteration since the last telemetry snapshot
+                #endif
+                } Javono_task_t;
+                
+                #define JAVONO_TASK(task_name, task_body, task_period_ms) \\
+                    { .name = (task_name), .body = (task_body), .period_ms = (task_period_ms) }
+                
+                /**
+                 * @brief Creates the FreeRTOS task that runs task->body.
+                 * @param stack_size Stack size in bytes.
+                 * @param core Core to pin the task to, or tskNO_AFFINITY.
+                 */
+                void Javono_task_start(Javono_task_t *task, uint32_t stack_size, UBaseType_t priority, BaseType_t core);
+                
+                #if JAVONO_TELEMETRY
+                /**
+                 * @brief Starts the task that sends a timing snapshot of every started task to the
+                 * host each JAVONO_TELEMETRY_INTERVAL_MS. Call after the last Javono_task_start.
+                 */
+                void Javono_telemetry_start(void);
+                #endif
+                
+                #endif // Javono_TASK_H
+                """;
+    }
+
+    private String taskSourceFile() {
+        return """
+                #include "Javono_task.h"
+                #include "esp_timer.h"
+                #include "freertos/task.h"
+                #include <stdbool.h>
+                
+                #define JAVONO_TASK_YIELD_US 10000
+                
+                #if JAVONO_TELEMETRY
+                #include "Javono_serial.h"
+                #include "esp_system.h"
+                #include <stdio.h>
+                
+                #define JAVONO_MAX_TASKS 16
+                """ + "#define TELEMETRY_STACK_SIZE " + TELEMETRY_STACK_SIZE + "\n" + """
+                
+                static Javono_task_t *started_tasks[JAVONO_MAX_TASKS];
+                static size_t started_count = 0;
+                
+                static void Javono_task_run_body(Javono_task_t *task) {
+                    int64_t start_us = esp_timer_get_time();
+                    task->body();
+                    int64_t elapsed_us = esp_timer_get_time() - start_us;
+                
+                    uint32_t us = elapsed_us > UINT32_MAX ? UINT32_MAX : (uint32_t)elapsed_us;
+                    int bucket = us < 2 ? 0 : 31 - __builtin_clz(us);
+                    if (bucket >= JAVONO_TELEMETRY_BUCKETS) bucket = JAVONO_TELEMETRY_BUCKETS - 1;
+                    task->histogram[bucket]++;
+                    if (us > task->max_us) task->max_us = us;
+                }
+                
+                /**
+                 * Sends one line per task with what changed since the previous snapshot:
+                 * Javono_telemetry <name> <iterations> <overruns> <max_jitter_us> <max_us> <stack_used> <stack_size>
+                 *     <free_heap> <min_free_heap> [<bucket>:<count>...]
+                 * Only the owning task writes the counters, so the deltas need no lock.
+                 */
+                static void Javono_telemetry_task(void *arg) {
+                    static uint32_t last_histogram[JAVONO_MAX_TASKS][JAVONO_TELEMETRY_BUCKETS];
+                    static uint32_t last_iterations[JAVONO_MAX_TASKS];
+                    static uint32_t last_overruns[JAVONO_MAX_TASKS];
+                    char line[384];
+                
+                    TickType_t last_wake = xTaskGetTickCount();
+                    while (true) {
+                        xTaskDelayUntil(&last_wake, pdMS_TO_TICKS(JAVONO_TELEMETRY_INTERVAL_MS));
+                        unsigned long free_heap = esp_get_free_heap_size();
+                        unsigned long min_free_heap = esp_get_minimum_free_heap_size();
+                
+                        for (size_t i = 0; i < started_count; i++) {
+                            Javono_task_t *task = started_tasks[i];
+                            uint32_t iterations = task->iterations;
+                            uint32_t overruns = task->overruns;
+                            // An iteration ending between these two lines loses its maximum; the histogram still has it
+                            uint32_t max_us = task->max_us;
+                            task->max_us = 0;
+                            uint32_t stack_used = task->stack_size - uxTaskGetStackHighWaterMark(task->handle);
+                
+                            int len = snprintf(line, sizeof(line), "Javono_telemetry %s %lu %lu %lld %lu %lu %lu %lu %lu",
+                                               task->name,
+                                               (unsigned long)(iterations - last_iterations[i]),
+                                               (unsigned long)(overruns - last_overruns[i]),
+                                               (long long)task->max_jitter_us,
+                                               (unsigned long)max_us,
+                                               (unsigned long)stack_used,
+                                               (unsigned long)task->stack_size,
+                                               free_heap, min_free_heap);
+                            last_iterations[i] = iterations;
+                            last_overruns[i] = overruns;
+                            for (int b = 0; b < JAVONO_TELEMETRY_BUCKETS; b++) {
+                                uint32_t count = task->histogram[b];
+                                if (count != last_histogram[i][b] && len < (int)sizeof(line)) {
+                                    len += snprintf(line + len, sizeof(line) - len, " %d:%lu", b,
+                                                    (unsigned long)(count - last_histogram[i][b]));
+                                }
+                                last_histogram[i][b] = count;
+                            }
+                            Javono_serial_write(line);
+                        }
+                    }
+                }
+                
+                void Javono_telemetry_start(void) {
+                    xTaskCreate(Javono_telemetry_task, "Javono_telemetry", TELEMETRY_STACK_SIZE, NULL, tskIDLE_PRIORITY + 1, NULL);
+                }
+                #else
+                static inline void Javono_task_run_body(Javono_task_t *task) {
+                    task->body();
+                }
+                #endif
+                
+                static void Javono_task_run_free(Javono_task_t *task) {
+                    int64_t last_yield = esp_timer_get_time();
+                    while (true) {
+                        Javono_task_run_body(task);
+                        task->iterations++;
+                        if (esp_timer_get_time() - last_yield >= JAVONO_TASK_YIELD_US) {
+                            vTaskDelay(1);
+                            last_yield = esp_timer_get_time();
+                        }
+                    }
                 }
-                """ + this.setupMethod + "\n" + """
-                """ + this.loopMethod + "\n" + """
                 
+                static void Javono_task_run_periodic(Javono_task_t *task) {
+                    TickType_t period = pdMS_TO_TICKS(task->period_ms);
+                    if (period == 0) period = 1;
+                    const int64_t period_us = (int64_t)period * 1000000 / configTICK_RATE_HZ;
+                
+                    TickType_t last_wake = xTaskGetTickCount();
+                    int64_t release_us = esp_timer_get_time();
+                    while (true) {
+                        int64_t jitter_us = esp_timer_get_time() - release_us;
+                        if (jitter_us > task->max_jitter_us) task->max_jitter_us = jitter_us;
+                
+                        Javono_task_run_body(task);
+                        task->iterations++;
+                
+                        if (xTaskDelayUntil(&last_wake, period) == pdFALSE) {
+                            // Missed the release: count it and restart the schedule instead of bursting to catch up
+                            task->overruns++;
+                            last_wake = xTaskGetTickCount();
+                            release_us = esp_timer_get_time();
+                        } else {
+                            release_us += period_us;
+                        }
+                    }
+                }
+                
+                static void Javono_task_entry(void *arg) {
+                    Javono_task_t *task = (Javono_task_t *)arg;
+                    if (task->period_ms == 0) {
+                        Javono_task_run_free(task);
+                    } else {
+                        Javono_task_run_periodic(task);
+                    }
+                }
+                
+                void Javono_task_start(Javono_task_t *task, uint32_t stack_size, UBaseType_t priority, BaseType_t core) {
+                    task->stack_size = stack_size;
+                #if JAVONO_TELEMETRY
+                    if (started_count < JAVONO_MAX_TASKS) started_tasks[started_count++] = task;
+                #endif
+                    xTaskCreatePinnedToCore(Javono_task_entry, task->name, stack_size, task, priority, &task->handle, core);
+                }
                 """;
     }
 
@@ -340,4 +1414,11 @@ class ProjectCreator {
     public void setSetupMethod(String setupMethod) {
         this.setupMethod = setupMethod;
     }
+
+    /**
+     * Sets the C source of the @JavonoEmbeddedTask method function, e.g. "void blink(){ ... }".
+     */
+    public void setTaskMethod(String function, String method) {
+        this.taskMethods.put(function, method);
+    }
 }
@@ -0,0 +1,238 @@
+package javono.serial;
+
+import javono.config.SerialConfig.OverflowPolicy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated ring of variable-length byte records for one producer thread and one consumer
+ * thread at a time. Neither side locks: each publishes its
+ * position with a volatile store or CAS after writing or copying the bytes, and a side that
+ * parks first announces itself so the other one can unpark it.
+ * <p>
+ * A record is a 4-byte header (kind in the top byte, length below) followed by its bytes, padded
+ * to 4. Records never wrap; when one does not fit before the end, the producer fills the rest
+ * with a padding header and starts again at 0. For DROP_OLDEST the producer moves the head past
+ * the oldest record with a CAS, so the consumer copies a record out first and only keeps it if
+ * its own CAS on the head succeeds.
+ */
+final class ByteRing {
+
+    private static final int HEADER = 4;
+    private static final int PADDING = -1;
+    private static final int MAX_LENGTH = 0xFFFFFF;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy policy;
+
+    // Byte positions; they only grow, the index is position & mask
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+    private volatile boolean closed = false;
+
+    // Written by the producer only
+    private volatile long received = 0;
+    private volatile long dropped = 0;
+
+    /**
+     * @param capacity bytes, rounded up to a power of two
+     */
+    ByteRing(int capacity, OverflowPolicy policy) {
+        int size = Math.max(64, Integer.highestOneBit(capacity - 1) << 1);
+        this.buffer = ByteBuffer.allocate(size);
+        this.capacity = size;
+        this.mask = size - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Producer side: appends a record, applying the overflow policy when there is no room.
+     *
+     * @return false if this record was dropped
+     */
+    boolean offer(int kind, byte[] source, int offset, int length) throws InterruptedException {
+        if (closed) return false;
+        received++;
+        int span = HEADER + align(length);
+        // Larger records might not fit even in an empty ring once padding is counted
+        if (length > getMaxRecordLength()) {
+            dropped++;
+            return false;
+        }
+
+        long position = tail.get();
+        int index = (int) (position & mask);
+        int room = capacity - index;
+        long needed = span <= room ? span : room + span;
+
+        while (capacity - (position - head.get()) < needed) {
+            switch (policy) {
+                case DROP_NEWEST -> {
+                    dropped++;
+                    return false;
+                }
+                case DROP_OLDEST -> {
+                    if (dropOldest()) dropped++;
+                }
+                case BLOCK -> {
+                    waitingProducer = Thread.currentThread();
+                    if (capacity - (position - head.get()) < needed && !closed) {
+                        LockSupport.park(this);
+                    }
+                    waitingProducer = null;
+                    if (Thread.interrupted()) throw new InterruptedException();
+                    if (closed) return false;
+                }
+            }
+        }
+
+        if (span > room) {
+            buffer.putInt(index, PADDING);
+            position += room;
+            index = 0;
+        }
+        buffer.putInt(index, kind << 24 | length);
+        buffer.put(index + HEADER, source, offset, length);
+        tail.set(position + span);
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+        return true;
+    }
+
+    // Moves the head past the oldest record; returns false if that was padding or the consumer got there first
+    private boolean dropOldest() {
+        long position = head.get();
+        int index = (int) (position & mask);
+        int header = buffer.getInt(index);
+        long next = header == PADDING ? position + (capacity - index) : position + HEADER + align(header & MAX_LENGTH);
+        return head.compareAndSet(position, next) && header != PADDING;
+    }
+
+    /**
+     * Consumer side: copies the oldest record into target if there is one. Callers must not
+     * consume from two threads at once.
+     *
+     * @return false if the ring is empty
+     */
+    boolean poll(Record target) {
+        return tryPoll(target);
+    }
+
+    /**
+     * Waits up to timeout until a record may be there, without taking it; another consumer can
+     * still take it first, so callers poll and wait again. Only one thread may wait at a time.
+     *
+     * @param timeoutNanos Long.MAX_VALUE to wait until closed
+     * @return false if nothing arrived in time or the ring is closed and empty
+     */
+    boolean await(long timeoutNanos) throws InterruptedException {
+        long deadline = timeoutNanos == Long.MAX_VALUE ? 0 : System.nanoTime() + timeoutNanos;
+        while (true) {
+            if (head.get() != tail.get()) return true;
+            if (closed) return false;
+
+            waitingConsumer = Thread.currentThread();
+            try {
+                // Checked again after announcing ourselves, so a record published meanwhile is not missed
+                if (head.get() != tail.get()) return true;
+                if (closed) return false;
+                if (deadline == 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) return false;
+                    LockSupport.parkNanos(this, remaining);
+                }
+            } finally {
+                waitingConsumer = null;
+            }
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    private boolean tryPoll(Record target) {
+        while (true) {
+            long position = head.get();
+            if (position == tail.get()) return false;
+
+            int index = (int) (position & mask);
+            int header = buffer.getInt(index);
+            if (header == PADDING) {
+                head.compareAndSet(position, position + (capacity - index));
+                continue;
+            }
+            int length = header & MAX_LENGTH;
+            if (length > capacity - index - HEADER) {
+                // Overwritten after the producer dropped it; the head has moved on
+                continue;
+            }
+            target.ensureCapacity(length);
+            buffer.get(index + HEADER, target.bytes, 0, length);
+            if (head.compareAndSet(position, position + HEADER + align(length))) {
+                target.kind = header >>> 24;
+                target.length = length;
+                Thread producer = waitingProducer;
+                if (producer != null) LockSupport.unpark(producer);
+                return true;
+            }
+            // The producer dropped this record while we copied it; take the next one
+        }
+    }
+
+    void close() {
+        closed = true;
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the longest record that is not dropped for its size alone.
+     */
+    int getMaxRecordLength() {
+        return Math.min(capacity / 2 - HEADER, MAX_LENGTH);
+    }
+
+    long getBufferedBytes() {
+        return tail.get() - head.get();
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    /**
+     * Reusable target for {@link #poll}; its array only grows, so a steady stream of messages
+     * is received without allocating.
+     */
+    static final class Record {
+        byte[] bytes = new byte[256];
+        int kind;
+        int length;
+
+        private void ensureCapacity(int length) {
+            if (bytes.length < length) bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package javono.serial;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Consistent Overhead Byte Stuffing: removes every 0x00 from a frame so 0x00 can delimit frames.
+ */
+final class Cobs {
+
+    private Cobs() {
+    }
+
+    /**
+     * Encodes data; the result contains no 0x00 and no trailing delimiter.
+     */
+    static byte[] encode(byte[] data, int offset, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + length / 254 + 2);
+        byte[] block = new byte[255];
+        int blockLength = 1;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            if (b != 0) block[blockLength++] = b;
+            if (b == 0 || blockLength == block.length) {
+                block[0] = (byte) blockLength;
+                out.write(block, 0, blockLength);
+                blockLength = 1;
+            }
+        }
+        block[0] = (byte) blockLength;
+        out.write(block, 0, blockLength);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes data into out, like {@link #encode(byte[], int, int)} but without allocating.
+     */
+    static void encode(byte[] data, int offset, int length, WriteBuffer out) {
+        int codeAt = out.reserve();
+        int code = 1;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            if (b != 0) {
+                out.write(b);
+                code++;
+            }
+            if (b == 0 || code == 0xFF) {
+                out.set(codeAt, code);
+                codeAt = out.reserve();
+                code = 1;
+            }
+        }
+        out.set(codeAt, code);
+    }
+
+    /**
+     * Decodes a frame without its delimiter.
+     *
+     * @return the decoded bytes, or null if the frame is malformed
+     */
+    static byte[] decode(byte[] frame, int offset, int length) {
+        byte[] out = new byte[length];
+        System.arraycopy(frame, offset, out, 0, length);
+        int outLength = decodeInPlace(out, 0, length);
+        if (outLength < 0) return null;
+        byte[] decoded = new byte[outLength];
+        System.arraycopy(out, 0, decoded, 0, outLength);
+        return decoded;
+    }
+
+    /**
+     * Decodes a frame without its delimiter over itself; the decoded bytes start at offset.
+     * Decoding never writes ahead of what it has read, since every code byte becomes at most one 0x00.
+     *
+     * @return the decoded length, or -1 if the frame is malformed
+     */
+    static int decodeInPlace(byte[] frame, int offset, int length) {
+        int in = offset;
+        int end = offset + length;
+        int out = offset;
+        while (in < end) {
+            int code = frame[in++] & 0xFF;
+            if (code == 0 || in + code - 1 > end) return -1;
+            for (int i = 1; i < code; i++) {
+                frame[out++] = frame[in++];
+            }
+            if (code != 0xFF && in < end) frame[out++] = 0;
+        }
+        return out - offset;
+    }
+}
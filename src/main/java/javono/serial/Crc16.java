@@ -0,0 +1,23 @@
+package javono.serial;
+
+/**
+ * CRC-16/CCITT-FALSE (polynomial 0x1021, initial value 0xFFFF), as computed by the generated firmware.
+ */
+final class Crc16 {
+
+    static final int INITIAL = 0xFFFF;
+
+    private Crc16() {
+    }
+
+    static int update(int crc, byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            crc &= 0xFFFF;
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,363 @@
+package javono.serial;
+
+import javono.config.SerialConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Speaks the Javono firmware's side of the serial protocol, so the host stack can be exercised
+ * without a board: the flash/thunder handshake, line credit, binary frames, Javono_baud and
+ * requests. Each line is handed to a sketch function whose return value is the reply, as if the
+ * sketch had passed it to Javono_serial_reply(); the default sketch echoes the line.
+ * <p>
+ * {@link #startLoopback(String)} runs it in memory; {@link #startPty()} puts it behind a Linux
+ * pseudo-terminal, so the host goes through jSerialComm and the kernel's tty layer like with
+ * a real board.
+ */
+public class FakeDevice implements AutoCloseable {
+
+    // Same as LINE_CREDITS and CREDIT_BATCH in the generated Javono_serial.c
+    private static final int LINE_CREDITS = 8;
+    private static final int CREDIT_BATCH = LINE_CREDITS / 2;
+    private static final int MAX_MESSAGE = 65536;
+
+    // Holds the pseudo-terminal and relays its traffic over stdin/stdout; the first line out is the tty's path
+    private static final String PTY_RELAY = """
+            import os, pty, select, sys, tty
+            master, slave = pty.openpty()
+            tty.setraw(slave)
+            os.write(1, os.ttyname(slave).encode() + b"\\n")
+            while True:
+                ready, _, _ = select.select([0, master], [], [])
+                if 0 in ready:
+                    data = os.read(0, 4096)
+                    if not data:
+                        break
+                    os.write(master, data)
+                if master in ready:
+                    try:
+                        os.write(1, os.read(master, 4096))
+                    except OSError:
+                        pass
+            """;
+
+    private final SerialTransport transport;
+    private final SerialTransport hostTransport;
+    private volatile UnaryOperator<String> sketch = UnaryOperator.identity();
+    private Thread thread;
+    private volatile boolean running = false;
+
+    // Owned by the device thread
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private boolean binary = false;
+    private int txSequence = 0;
+    private int rxSequence = 0;
+    private int creditsOwed = 0;
+    private volatile long linesReceived = 0;
+    private volatile long lostFrames = 0;
+
+    /**
+     * @param transport     the device's end of the link
+     * @param hostTransport the end the host should open, or null if the caller knows it
+     */
+    public FakeDevice(SerialTransport transport, SerialTransport hostTransport) {
+        this.transport = transport;
+        this.hostTransport = hostTransport;
+    }
+
+    /**
+     * Starts a device on an in-memory link.
+     */
+    public static FakeDevice startLoopback(String name) throws IOException {
+        LoopbackTransport host = new LoopbackTransport(name);
+        FakeDevice device = new FakeDevice(host.getPeer(), host);
+        device.start();
+        return device;
+    }
+
+    /**
+     * Starts a device behind a new pseudo-terminal. Needs Linux (or macOS) and python3, which
+     * ESP-IDF requires anyway.
+     */
+    public static FakeDevice startPty() throws IOException {
+        Process relay;
+        try {
+            relay = new ProcessBuilder("python3", "-c", PTY_RELAY).start();
+        } catch (IOException e) {
+            throw new IOException("The PTY fake device needs python3: " + e.getMessage(), e);
+        }
+        String ttyPath = readLine(relay.getInputStream());
+        if (ttyPath.isEmpty()) {
+            relay.destroy();
+            throw new IOException("Could not create a pseudo-terminal");
+        }
+        FakeDevice device = new FakeDevice(new RelayTransport(ttyPath, relay), new JSerialCommTransport(ttyPath));
+        device.start();
+        return device;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') line.write(b);
+        return line.toString(StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Returns the end of the link to pass to {@link JavonoSerialThreaded#JavonoSerialThreaded(SerialTransport, SerialConfig)}.
+     */
+    public SerialTransport getHostTransport() {
+        return hostTransport;
+    }
+
+    /**
+     * Returns the port name the host opens, e.g. /dev/pts/3 for a PTY device.
+     */
+    public String getPortName() {
+        return hostTransport != null ? hostTransport.getName() : transport.getName();
+    }
+
+    /**
+     * Sets what the device does with each line it reads: the returned text is the reply, and
+     * null means no reply.
+     */
+    public void setSketch(UnaryOperator<String> sketch) {
+        this.sketch = sketch;
+    }
+
+    public long getLinesReceived() {
+        return linesReceived;
+    }
+
+    public long getLostFrames() {
+        return lostFrames;
+    }
+
+    public void start() throws IOException {
+        transport.open(SerialConfig.DEFAULT, true);
+        running = true;
+        thread = new Thread(this::run, "JavonoFakeDevice-" + transport.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        transport.close();
+        if (thread != null) {
+            try {
+                thread.join(500);
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    private void run() {
+        byte[] buffer = new byte[4096];
+        try {
+            while (running) {
+                int count = transport.read(buffer, buffer.length);
+                if (count < 0) break;
+                for (int i = 0; i < count; i++) {
+                    byte b = buffer[i];
+                    if (b != (binary ? 0 : '\n')) {
+                        if (pending.size() < MAX_MESSAGE) pending.write(b);
+                        continue;
+                    }
+                    byte[] message = pending.toByteArray();
+                    pending.reset();
+                    if (binary) {
+                        handleFrame(message);
+                    } else {
+                        handleLine(new String(message, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (running) System.err.println("Fake device: " + e.getMessage());
+        }
+    }
+
+    private void handleLine(String raw) throws IOException {
+        // The host wraps its handshake in '\0'
+        String line = raw.replace("\0", "").replace("\r", "");
+        if (line.equals("flash")) {
+            handshake();
+        } else if (line.equals("Javono_binary")) {
+            sendText("Javono_binary");
+            txSequence = 0;
+            rxSequence = 0;
+            binary = true;
+        } else if (line.startsWith("Javono_baud ")) {
+            // Confirms any rate; a pseudo-terminal has none
+            sendText(line);
+        } else if (line.startsWith("Javono_req ")) {
+            String[] parts = line.split(" ", 3);
+            try {
+                int requestId = Integer.parseInt(parts[1]);
+                runSketch(requestId, parts.length > 2 ? parts[2] : "");
+            } catch (NumberFormatException e) {
+                // The firmware drops malformed requests too
+            }
+        } else {
+            runSketch(0, line);
+        }
+    }
+
+    private void handleFrame(byte[] data) throws IOException {
+        if (data.length == 0) return;
+        // A host that does not know the mode sends its handshake as plain text between delimiters
+        if (Arrays.equals(data, "flash\n".getBytes(StandardCharsets.US_ASCII))) {
+            handshake();
+            return;
+        }
+        Frame frame = Frame.decode(data, 0, data.length);
+        if (frame == null) {
+            lostFrames++;
+            return;
+        }
+        lostFrames += (frame.getSequence() - rxSequence) & 0xFF;
+        rxSequence = (frame.getSequence() + 1) & 0xFF;
+
+        byte[] payload = frame.getPayload();
+        switch (frame.getType()) {
+            case Frame.TYPE_TEXT -> runSketch(0, new String(payload, StandardCharsets.UTF_8));
+            case Frame.TYPE_DATA -> {
+                // Binary payloads are echoed as they are
+                linesReceived++;
+                send(new Frame(Frame.TYPE_DATA, txSequence++, payload).encode());
+                lineRead();
+            }
+            case Frame.TYPE_REQUEST -> {
+                if (payload.length < 2) return;
+                int requestId = (payload[0] & 0xFF) | (payload[1] & 0xFF) << 8;
+                runSketch(requestId, new String(payload, 2, payload.length - 2, StandardCharsets.UTF_8));
+            }
+            default -> {
+                // Ignored like the firmware ignores unknown types
+            }
+        }
+    }
+
+    private void handshake() throws IOException {
+        binary = false;
+        creditsOwed = 0;
+        sendText("thunder");
+        grant(LINE_CREDITS);
+    }
+
+    private void runSketch(int requestId, String line) throws IOException {
+        linesReceived++;
+        String reply = sketch.apply(line);
+        if (reply != null) {
+            if (requestId == 0) {
+                sendText(reply);
+            } else if (binary) {
+                byte[] text = reply.getBytes(StandardCharsets.UTF_8);
+                byte[] payload = new byte[text.length + 2];
+                payload[0] = (byte) requestId;
+                payload[1] = (byte) (requestId >> 8);
+                System.arraycopy(text, 0, payload, 2, text.length);
+                send(new Frame(Frame.TYPE_RESPONSE, txSequence++, payload).encode());
+            } else {
+                sendText("Javono_rsp " + requestId + " " + reply);
+            }
+        }
+        lineRead();
+    }
+
+    // Returns credit in batches, like Javono_serial_read_data()
+    private void lineRead() throws IOException {
+        if (++creditsOwed >= CREDIT_BATCH) {
+            grant(creditsOwed);
+            creditsOwed = 0;
+        }
+    }
+
+    private void grant(int lines) throws IOException {
+        if (binary) {
+            send(new Frame(Frame.TYPE_CREDIT, txSequence++, new byte[]{(byte) lines, (byte) (lines >> 8)}).encode());
+        } else {
+            sendText("Javono_credit " + lines);
+        }
+    }
+
+    private void sendText(String text) throws IOException {
+        if (binary) {
+            send(new Frame(Frame.TYPE_TEXT, txSequence++, text.getBytes(StandardCharsets.UTF_8)).encode());
+        } else {
+            send((text + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void send(byte[] bytes) throws IOException {
+        transport.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * The device's end of a pseudo-terminal: bytes to and from the python3 relay that holds it.
+     */
+    private static final class RelayTransport implements SerialTransport {
+        private final String ttyPath;
+        private final Process relay;
+        private final InputStream in;
+        private final OutputStream out;
+
+        private RelayTransport(String ttyPath, Process relay) {
+            this.ttyPath = ttyPath;
+            this.relay = relay;
+            this.in = relay.getInputStream();
+            this.out = relay.getOutputStream();
+        }
+
+        @Override
+        public String getName() {
+            return ttyPath;
+        }
+
+        @Override
+        public void open(SerialConfig config, boolean blockingReads) {
+        }
+
+        // Blocks until the relay sends something; close() ends the relay and with it the read
+        @Override
+        public int read(byte[] buffer, int length) {
+            try {
+                return in.read(buffer, 0, length);
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        // read() always blocks, so it never returns 0 and nobody waits here
+        @Override
+        public void awaitData(long timeoutMs) {
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            out.write(data, offset, length);
+            out.flush();
+        }
+
+        @Override
+        public void setBaudRate(int baudRate) {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return relay.isAlive();
+        }
+
+        @Override
+        public void close() {
+            relay.destroy();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package javono.serial;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A message of the binary host/device protocol. On the wire a frame is
+ * COBS(type, sequence, payload, CRC16 little-endian) followed by a 0x00 delimiter.
+ * Each side numbers its frames so the receiver can count lost ones.
+ */
+public class Frame {
+
+    /** A line of text, without the newline. */
+    public static final int TYPE_TEXT = 0x01;
+    /** Device to host: the host may send this many more TEXT or DATA frames (unsigned 16-bit little-endian). */
+    public static final int TYPE_CREDIT = 0x02;
+    /** Arbitrary binary payload. */
+    public static final int TYPE_DATA = 0x03;
+    /** Device to host: a tokenized log message, see {@link LogDecoder}. */
+    public static final int TYPE_LOG = 0x04;
+    /** Host to device: a line sent as a request, after its id (unsigned 16-bit little-endian). */
+    public static final int TYPE_REQUEST = 0x05;
+    /** Device to host: the reply to a request, after the request's id. */
+    public static final int TYPE_RESPONSE = 0x06;
+
+    static final int OVERHEAD = 4;
+
+    private final int type;
+    private final int sequence;
+    private final byte[] payload;
+
+    public Frame(int type, int sequence, byte[] payload) {
+        this.type = type;
+        this.sequence = sequence & 0xFF;
+        this.payload = payload;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Returns the bytes to write to the port, including the trailing delimiter.
+     */
+    public byte[] encode() {
+        byte[] raw = new byte[payload.length + OVERHEAD];
+        raw[0] = (byte) type;
+        raw[1] = (byte) sequence;
+        System.arraycopy(payload, 0, raw, 2, payload.length);
+        int crc = Crc16.update(Crc16.INITIAL, raw, 0, raw.length - 2);
+        raw[raw.length - 2] = (byte) crc;
+        raw[raw.length - 1] = (byte) (crc >> 8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length + raw.length / 254 + 3);
+        out.writeBytes(Cobs.encode(raw, 0, raw.length));
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the bytes between two delimiters.
+     *
+     * @return the frame, or null if it is malformed or fails the CRC check
+     */
+    public static Frame decode(byte[] data, int offset, int length) {
+        byte[] raw = Cobs.decode(data, offset, length);
+        if (raw == null || raw.length < OVERHEAD) return null;
+
+        int crc = (raw[raw.length - 2] & 0xFF) | (raw[raw.length - 1] & 0xFF) << 8;
+        if (Crc16.update(Crc16.INITIAL, raw, 0, raw.length - 2) != crc) return null;
+
+        byte[] payload = new byte[raw.length - OVERHEAD];
+        System.arraycopy(raw, 2, payload, 0, payload.length);
+        return new Frame(raw[0] & 0xFF, raw[1] & 0xFF, payload);
+    }
+}
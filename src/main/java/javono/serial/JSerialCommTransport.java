@@ -0,0 +1,184 @@
+package javono.serial;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+import javono.config.SerialConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A real serial port through jSerialComm. It remembers the USB device behind the port, so
+ * {@link #reopen} can find it again if it re-enumerates under another name.
+ * <p>
+ * Without blocking reads, jSerialComm's data-available event wakes a reader waiting in
+ * {@link #awaitData}, so a virtual reader neither pins its carrier nor polls.
+ */
+final class JSerialCommTransport implements SerialTransport {
+
+    private volatile String portName;
+    private volatile SerialPort comPort;
+    private volatile OutputStream out;
+
+    // The USB device last opened through this port; vendorId is -1 if unknown
+    private int vendorId = -1;
+    private int productId = -1;
+    private String serialNumber;
+
+    // Signalled by jSerialComm's event thread when data arrives or the port goes away
+    private final ReentrantLock dataLock = new ReentrantLock();
+    private final Condition dataArrived = dataLock.newCondition();
+    private boolean dataPending = false;
+
+    JSerialCommTransport(String portName) {
+        this.portName = portName;
+    }
+
+    @Override
+    public String getName() {
+        return portName;
+    }
+
+    @Override
+    public void open(SerialConfig config, boolean blockingReads) throws IOException {
+        comPort = SerialPort.getCommPort(portName);
+        int parity = switch (config.getParity()) {
+            case NONE -> SerialPort.NO_PARITY;
+            case EVEN -> SerialPort.EVEN_PARITY;
+            case ODD -> SerialPort.ODD_PARITY;
+        };
+        int stopBits = config.getStopBits() == 2 ? SerialPort.TWO_STOP_BITS : SerialPort.ONE_STOP_BIT;
+        comPort.setComPortParameters(config.getBaudRate(), config.getDataBits(), stopBits, parity);
+        if (blockingReads) {
+            // A read returns as soon as any byte arrives; the timeout only lets the reader notice close()
+            comPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, 100, 0);
+        } else {
+            comPort.setComPortTimeouts(SerialPort.TIMEOUT_NONBLOCKING, 0, 0);
+        }
+
+        if (!comPort.openPort()) {
+            comPort = null;
+            throw new IOException("Failed to open serial port: " + portName);
+        }
+        out = comPort.getOutputStream();
+        if (!blockingReads) comPort.addDataListener(new DataListener());
+        rememberDevice(comPort);
+    }
+
+    @Override
+    public void reopen(SerialConfig config, boolean blockingReads) throws IOException {
+        close();
+        try {
+            open(config, blockingReads);
+        } catch (IOException e) {
+            String moved = findDevice();
+            if (moved == null) throw e;
+            portName = moved;
+            open(config, blockingReads);
+        }
+    }
+
+    private void rememberDevice(SerialPort opened) {
+        for (SerialPort port : SerialPort.getCommPorts()) {
+            if (port.getSystemPortPath().equals(opened.getSystemPortPath()) && port.getVendorID() > 0) {
+                vendorId = port.getVendorID();
+                productId = port.getProductID();
+                serialNumber = port.getSerialNumber();
+                return;
+            }
+        }
+    }
+
+    // Another port with the remembered USB device, if exactly one has it
+    private String findDevice() {
+        if (vendorId < 0) return null;
+        String found = null;
+        for (SerialPort port : SerialPort.getCommPorts()) {
+            if (port.getVendorID() != vendorId || port.getProductID() != productId) continue;
+            if (!isUnknown(serialNumber) && !serialNumber.equals(port.getSerialNumber())) continue;
+            if (found != null) return null;
+            found = port.getSystemPortPath();
+        }
+        return found;
+    }
+
+    private static boolean isUnknown(String serialNumber) {
+        return serialNumber == null || serialNumber.isBlank() || serialNumber.equalsIgnoreCase("Unknown");
+    }
+
+    @Override
+    public int read(byte[] buffer, int length) {
+        SerialPort port = comPort;
+        return port == null ? -1 : port.readBytes(buffer, length);
+    }
+
+    @Override
+    public void awaitData(long timeoutMs) throws InterruptedException {
+        dataLock.lockInterruptibly();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (!dataPending && comPort != null && remaining > 0) {
+                remaining = dataArrived.awaitNanos(remaining);
+            }
+            dataPending = false;
+        } finally {
+            dataLock.unlock();
+        }
+    }
+
+    private void signalData() {
+        dataLock.lock();
+        try {
+            dataPending = true;
+            dataArrived.signalAll();
+        } finally {
+            dataLock.unlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        OutputStream stream = out;
+        if (stream == null) throw new IOException("Serial port is closed: " + portName);
+        stream.write(data, offset, length);
+        stream.flush();
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) {
+        if (comPort != null) comPort.setBaudRate(baudRate);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return comPort != null && comPort.isOpen();
+    }
+
+    @Override
+    public void close() {
+        if (out != null) try { out.close(); } catch (IOException ignored) {}
+        if (comPort != null) {
+            comPort.removeDataListener();
+            comPort.closePort();
+        }
+        out = null;
+        comPort = null;
+        signalData();
+    }
+
+    private class DataListener implements SerialPortDataListener {
+        @Override
+        public int getListeningEvents() {
+            return SerialPort.LISTENING_EVENT_DATA_AVAILABLE | SerialPort.LISTENING_EVENT_PORT_DISCONNECTED;
+        }
+
+        @Override
+        public void serialEvent(SerialPortEvent event) {
+            signalData();
+        }
+    }
+}
@@ -1,138 +1,1043 @@
 package javono.serial;
 
-
-import com.fazecast.jSerialComm.SerialPort;
+import javono.config.SerialConfig;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Threaded serial communication manager for ESP32 device.
- * Uses a background thread to read data and a write queue for outgoing commands.
+ * A reader thread blocks on the port and handles input as soon as it arrives; a writer thread
+ * sleeps until there is something it may send. Both share the protocol state under one lock.
+ * Commands are sent as fast as the firmware's credit allows: after the flash/thunder
+ * handshake the device grants a number of lines with "Javono_credit N" and returns
+ * credit as its sketch reads them.
+ * <p>
+ * The link starts in text mode after every handshake. {@link #enableBinaryMode()} switches
+ * it to COBS-framed binary messages (see {@link Frame}) once the device has answered.
+ * <p>
+ * Port settings come from a {@link SerialConfig}. If it names a switch rate, the host asks the
+ * device to change to it after the handshake with "Javono_baud N" and repeats the handshake at the
+ * new rate; if that fails, both sides return to the base rate.
+ * <p>
+ * Traffic, queue depth and latencies are recorded in the port's {@link SerialMetrics}.
+ * <p>
+ * Whatever may be sent is encoded into one reused buffer and written with a single call. With
+ * javono.serial.coalesceDelayMs set, a small batch is held back for up to that long so that
+ * further commands can join it, like Nagle's algorithm; see {@link SerialConfig#getCoalesceDelayMs()}.
+ * <p>
+ * When the port fails, the reader reopens it with growing pauses, following the board if it
+ * comes back under another name, and repeats the handshake; see
+ * {@link SerialConfig#getReconnectMaxDelayMs()}. A device that restarts on its own is noticed
+ * by its boot banner and gets a new handshake as well. Queued commands are kept meanwhile, and
+ * those of a write that failed are sent again, so the device may see such a command twice.
  */
 public class JavonoSerialThreaded {
 
+    // Wrapped in 0x00 so a device still in binary mode sees it as a frame of its own
+    private static final byte[] HANDSHAKE_REQUEST = "\0flash\n\0".getBytes(StandardCharsets.UTF_8);
+    private static final String HANDSHAKE_REPLY = "thunder";
+    private static final String CREDIT_PREFIX = "Javono_credit ";
+    private static final String BINARY_MODE = "Javono_binary";
+    private static final String BAUD_PREFIX = "Javono_baud ";
+    private static final String REQUEST_PREFIX = "Javono_req ";
+    private static final String RESPONSE_PREFIX = "Javono_rsp ";
+    // The reader matches lines against these without turning them into Strings
+    private static final byte[] HANDSHAKE_REPLY_BYTES = ascii(HANDSHAKE_REPLY);
+    private static final byte[] CREDIT_PREFIX_BYTES = ascii(CREDIT_PREFIX);
+    private static final byte[] BINARY_MODE_BYTES = ascii(BINARY_MODE);
+    private static final byte[] BAUD_PREFIX_BYTES = ascii(BAUD_PREFIX);
+    private static final byte[] REQUEST_PREFIX_BYTES = ascii(REQUEST_PREFIX);
+    private static final byte[] RESPONSE_PREFIX_BYTES = ascii(RESPONSE_PREFIX);
+    private static final byte[] LOG_PREFIX_BYTES = ascii(LogDecoder.PREFIX);
+    private static final byte[] TELEMETRY_PREFIX_BYTES = ascii(TelemetryAggregator.PREFIX);
+    private static final long HANDSHAKE_RETRY_MS = 500;
+    // Shorter than the device's BAUD_CONFIRM_MS, so the host is back at the base rate first
+    private static final long BAUD_CONFIRM_MS = 800;
+    // How long a reader without blocking reads waits for data before it checks whether it should stop
+    private static final long AWAIT_DATA_MS = 100;
+    // Pause before the first attempt to reopen a lost port; it doubles up to reconnectMaxDelayMs
+    private static final long RECONNECT_INITIAL_DELAY_MS = 100;
+    // The ESP32 ROM prints "rst:0x1 (POWERON_RESET),boot:0x13 ..." when the chip starts. It does
+    // so at 115200 baud, so a restart is only noticed while the link runs at that rate.
+    private static final byte[] RESET_BANNER_BYTES = ascii("rst:0x");
+
+    private final SerialTransport transport;
     private final String portName;
-    private SerialPort comPort;
-    private InputStream in;
-    private OutputStream out;
+    private final SerialConfig config;
+
+    // Guards the queue and protocol state below; signalled whenever the writer may have work
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Deque<Outgoing> writeQueue = new ArrayDeque<>();
+    private int queuedBytes = 0;
+    private final MessageStream<String> lines;
+    private final MessageStream<byte[]> data;
+    private final TelemetryAggregator telemetry = new TelemetryAggregator();
+    private final SerialMetrics metrics;
+    private volatile LogDecoder logDecoder = LogDecoder.empty();
+    private volatile ResponseListener responseListener;
+
+    // Owned by the reader thread, which only takes the lock for protocol messages
+    private final byte[] pending;
+    private int pendingLength = 0;
+    // Set when a message outgrew pending; the rest of it is dropped up to the next delimiter
+    private boolean discardLine = false;
+    private int rxSequence = 0;
+    private volatile boolean discardPending = false;
 
-    private final BlockingQueue<String> writeQueue = new LinkedBlockingQueue<>();
-    private final StringBuilder responseBuffer = new StringBuilder();
+    // Guarded by lock
+    private int credits = 0;
+    private boolean grantFollowsHandshake = false;
+    private long lastHandshakeAttempt = 0;
+    private boolean binaryRequestSent = false;
+    private int txSequence = 0;
+    private boolean baudSwitchAttempted = false;
+    private long baudRequestedAt = 0;
+    private long baudSwitchedAt = 0;
+    // Counts handshake sessions, so a write that fails after a reconnect is not blamed on the new one
+    private int session = 0;
+    private volatile boolean linkDown = false;
 
-    private Thread ioThread;
+    // Written by prepareBatch() on the writer thread, read by it once the batch is written
+    private int batchMessages = 0;
+    private Outgoing[] batchQueued = new Outgoing[16];
+    private int batchQueuedCount = 0;
+
+    private volatile boolean handshakeComplete = false;
+    private volatile boolean binaryRequested = false;
+    private volatile boolean binary = false;
+    private volatile long lostFrames = 0;
+    private volatile int baudRate;
+
+    // Written by the reader or writer only
+    private volatile long bytesReceived = 0;
+    private volatile long bytesSent = 0;
+    private volatile long lastReceiveMillis = 0;
+    private volatile boolean failed = false;
+
+    private final ThreadFactory threadFactory;
+    private Thread readerThread;
+    private Thread writerThread;
+    private boolean blockingReads;
     private volatile boolean running = false;
 
     public JavonoSerialThreaded(String portName) {
-        this.portName = portName;
+        this(portName, SerialConfig.DEFAULT);
+    }
+
+    public JavonoSerialThreaded(String portName, SerialConfig config) {
+        this(portName, config, Thread::new);
+    }
+
+    /**
+     * @param threadFactory creates the reader and writer threads; with virtual threads the
+     *                      reader waits for the port's data event instead of blocking in native code
+     */
+    public JavonoSerialThreaded(String portName, SerialConfig config, ThreadFactory threadFactory) {
+        this(new JSerialCommTransport(portName), config, threadFactory);
+    }
+
+    /**
+     * Runs the protocol over any link, e.g. a {@link LoopbackTransport} to a {@link FakeDevice}.
+     */
+    public JavonoSerialThreaded(SerialTransport transport, SerialConfig config) {
+        this(transport, config, Thread::new);
+    }
+
+    public JavonoSerialThreaded(SerialTransport transport, SerialConfig config, ThreadFactory threadFactory) {
+        this.transport = transport;
+        this.portName = transport.getName();
+        this.config = config;
+        this.threadFactory = threadFactory;
+        this.baudRate = config.getBaudRate();
+        this.metrics = SerialMetrics.forPort(portName);
+        this.lines = new MessageStream<>("lines", config.getReceiveBufferSize(), config.getOverflowPolicy(), this::decodeLine);
+        this.data = new MessageStream<>("data", config.getReceiveBufferSize(), config.getOverflowPolicy(),
+                (kind, buffer, length) -> Arrays.copyOf(buffer, length));
+        // Room for the longest line the streams keep, or the COBS frame around the longest payload
+        int maxMessage = Math.max(lines.getMaxMessageLength(), data.getMaxMessageLength()) + Frame.OVERHEAD;
+        this.pending = new byte[maxMessage + maxMessage / 254 + 1];
+    }
+
+    // Runs on the consumer's thread, so log messages are only formatted when someone reads them
+    private String decodeLine(int kind, byte[] buffer, int length) {
+        return switch (kind) {
+            case MessageStream.KIND_LOG_LINE -> {
+                String line = new String(buffer, 0, length, StandardCharsets.UTF_8);
+                String message = logDecoder.decodeLine(line);
+                yield message != null ? message : line;
+            }
+            case MessageStream.KIND_LOG_FRAME -> {
+                String message = logDecoder.decodeFrame(buffer, 0, length);
+                yield message != null ? message : "log (malformed frame)";
+            }
+            default -> new String(buffer, 0, length, StandardCharsets.UTF_8);
+        };
     }
 
     /**
-     * Opens the serial connection and starts the IO thread.
+     * Opens the serial connection and starts the reader and writer threads.
      */
     public void open() throws IOException {
-        comPort = SerialPort.getCommPort(portName);
-        comPort.setComPortParameters(115200, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY);
-        comPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, 100, 0);
+        readerThread = threadFactory.newThread(this::runReader);
+        writerThread = threadFactory.newThread(this::runWriter);
+        readerThread.setName("JavonoSerialReader-" + portName);
+        writerThread.setName("JavonoSerialWriter-" + portName);
+        // A native read would pin a virtual thread's carrier for its whole timeout, so those wait for data events
+        blockingReads = !readerThread.isVirtual();
+        transport.open(config, blockingReads);
 
-        if (!comPort.openPort()) {
-            throw new IOException("Failed to open serial port: " + portName);
+        lock.lock();
+        try {
+            resetSession();
+        } finally {
+            lock.unlock();
         }
-
-        in = comPort.getInputStream();
-        out = comPort.getOutputStream();
+        pendingLength = 0;
+        discardLine = false;
+        discardPending = false;
+        linkDown = false;
+        failed = false;
+        bytesReceived = 0;
+        bytesSent = 0;
+        lastReceiveMillis = 0;
+        metrics.opened();
 
         running = true;
-        ioThread = new Thread(this::runIO, "JavonoSerialThread");
-        ioThread.start();
+        readerThread.start();
+        writerThread.start();
     }
 
     /**
-     * Sends a command to the device.
+     * Queues a command for the device. It is sent once the device has granted credit for it.
      *
      * @param command command string
      */
     public void write(String command) {
-        writeQueue.offer(command.endsWith("\n") ? command : command + "\n");
+        String line = command.endsWith("\n") ? command.substring(0, command.length() - 1) : command;
+        enqueue(new Outgoing(Frame.TYPE_TEXT, 0, line.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Queues a binary payload for the device's Javono_serial_read_data().
+     *
+     * @throws IllegalStateException if the link is not in binary mode
+     */
+    public void writeData(byte[] data) {
+        if (!binary) {
+            throw new IllegalStateException("Binary payloads need binary mode; call enableBinaryMode() and wait for isBinaryMode().");
+        }
+        enqueue(new Outgoing(Frame.TYPE_DATA, 0, data.clone()));
+    }
+
+    /**
+     * Queues a command as request requestId (1 to 65535). The device's Javono_serial_reply() to it
+     * goes to the {@link ResponseListener} instead of {@link #lines()}.
+     */
+    public void writeRequest(int requestId, String command) {
+        if (requestId <= 0 || requestId > 0xFFFF) {
+            throw new IllegalArgumentException("Request id must be between 1 and 65535: " + requestId);
+        }
+        enqueue(new Outgoing(Frame.TYPE_REQUEST, requestId, command.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void enqueue(Outgoing message) {
+        lock.lock();
+        try {
+            writeQueue.add(message);
+            queuedBytes += message.payload.length;
+            metrics.writeQueueDepth(writeQueue.size());
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Asks the device to switch to binary frames after the handshake, and again after
+     * every later handshake.
+     */
+    public void enableBinaryMode() {
+        lock.lock();
+        try {
+            binaryRequested = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true while both sides exchange binary frames.
+     */
+    public boolean isBinaryMode() {
+        return binary;
     }
 
     /**
-     * Reads the latest line response from the device.
-     * Clears buffer after reading.
+     * Reads every line the device has sent since the last call, joined with newlines.
+     * Use {@link #lines()} to get them one at a time.
      *
      * @return Optional containing response, or empty if nothing
      */
     public Optional<String> readResponse() {
-        synchronized (responseBuffer) {
-            if (responseBuffer.length() == 0) return Optional.empty();
-            String result = responseBuffer.toString().trim();
-            responseBuffer.setLength(0);
-            return Optional.of(result);
-        }
+        List<String> waiting = new ArrayList<>();
+        if (lines.drainTo(waiting) == 0) return Optional.empty();
+        return Optional.of(String.join("\n", waiting).trim());
+    }
+
+    /**
+     * Returns the next payload the device sent with Javono_serial_write_data(), if any.
+     */
+    public Optional<byte[]> readData() {
+        return Optional.ofNullable(data.poll());
+    }
+
+    /**
+     * Returns the lines from the device, including TEXT frames and decoded log messages,
+     * but not the protocol's own lines. The stream ends when the connection is closed.
+     */
+    public MessageStream<String> lines() {
+        return lines;
+    }
+
+    /**
+     * Returns the payloads the device sent with Javono_serial_write_data().
+     */
+    public MessageStream<byte[]> data() {
+        return data;
+    }
+
+    /**
+     * Returns the number of frames from the device that were corrupt or missing.
+     */
+    public long getLostFrames() {
+        return lostFrames;
     }
 
     /**
-     * Background I/O thread that reads serial data and writes from queue.
+     * Returns the metrics of this connection's port.
      */
-    private void runIO() {
+    public SerialMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reader thread: blocks until the port has data and handles it right away. On a virtual
+     * thread reads return at once, and the reader parks in {@link SerialTransport#awaitData}
+     * until the port signals data.
+     */
+    private void runReader() {
         byte[] readBuffer = new byte[1024];
-        while (running && comPort != null && comPort.isOpen()) {
-            try {
-                // Handle incoming data
-                while (in.available() > 0) {
-                    int numRead = in.read(readBuffer);
-                    if (numRead > 0) {
-                        String data = new String(readBuffer, 0, numRead, StandardCharsets.UTF_8);
-                        synchronized (responseBuffer) {
-                            responseBuffer.append(data);
-                        }
+        try {
+            while (running) {
+                // The writer marks the link down when a write fails
+                int numRead = linkDown ? -1 : transport.read(readBuffer, readBuffer.length);
+                if (numRead < 0) {
+                    if (!running) break;
+                    if (config.getReconnectMaxDelayMs() == 0) {
+                        System.err.println("Serial I/O error: reading " + transport.getName() + " failed");
+                        failed = true;
+                        break;
                     }
+                    if (!reconnect()) break;
+                    continue;
+                }
+                if (numRead > 0) {
+                    bytesReceived += numRead;
+                    lastReceiveMillis = System.currentTimeMillis();
+                    metrics.bytesIn(numRead);
+                    long readAt = System.nanoTime();
+                    receive(readBuffer, numRead);
+                    metrics.readLatency(System.nanoTime() - readAt);
+                } else if (!blockingReads) {
+                    transport.awaitData(AWAIT_DATA_MS);
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                // Handle outgoing data
-                String command = writeQueue.poll();
-                if (command != null && out != null) {
-                    out.write(command.getBytes(StandardCharsets.UTF_8));
-                    out.flush();
+    /**
+     * Writer thread: waits until a message has credit or a protocol step is due, then sends
+     * everything that may go in one write.
+     */
+    private void runWriter() {
+        WriteBuffer batch = new WriteBuffer(1024);
+        lock.lock();
+        try {
+            while (running) {
+                if (linkDown) {
+                    // The reader is reconnecting and signals once it is done
+                    changed.await();
+                    continue;
+                }
+                long waitMs = prepareBatch(batch, System.currentTimeMillis());
+                if (batch.size() > 0) {
+                    int batchSession = session;
+                    IOException error = null;
+                    // The reader must not wait for the UART while we write
+                    lock.unlock();
+                    try {
+                        transport.write(batch.array(), 0, batch.size());
+                        bytesSent += batch.size();
+                        recordWrite(batch.size());
+                    } catch (IOException e) {
+                        error = e;
+                    } finally {
+                        batch.reset();
+                        lock.lock();
+                    }
+                    if (error != null && !writeFailed(error, batchSession)) break;
+                } else {
+                    changed.await(waitMs, TimeUnit.MILLISECONDS);
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                Thread.sleep(20); // avoid busy waiting
-            } catch (Exception e) {
-                System.err.println("Serial I/O error: " + e.getMessage());
+    private void recordWrite(int length) {
+        long writtenAt = System.nanoTime();
+        metrics.bytesOut(length);
+        metrics.framesOut(batchMessages);
+        for (int i = 0; i < batchQueuedCount; i++) {
+            metrics.writeLatency(writtenAt - batchQueued[i].queuedAt);
+            batchQueued[i] = null;
+        }
+        batchMessages = 0;
+        batchQueuedCount = 0;
+    }
+
+    /**
+     * Puts the commands of a failed write back at the front of the queue and leaves the port to
+     * the reader's {@link #reconnect()}. Called with lock held.
+     *
+     * @return false if the writer should stop
+     */
+    private boolean writeFailed(IOException error, int batchSession) {
+        if (!running) return false;
+        if (config.getReconnectMaxDelayMs() == 0) {
+            System.err.println("Serial I/O error: " + error.getMessage());
+            failed = true;
+            return false;
+        }
+        for (int i = batchQueuedCount - 1; i >= 0; i--) {
+            writeQueue.addFirst(batchQueued[i]);
+            queuedBytes += batchQueued[i].payload.length;
+            batchQueued[i] = null;
+        }
+        batchMessages = 0;
+        batchQueuedCount = 0;
+        metrics.writeQueueDepth(writeQueue.size());
+        // A write to the old port may fail after the reader has already opened the new one
+        if (batchSession == session) linkDown = true;
+        return true;
+    }
+
+    /**
+     * Reopens the port after it failed, pausing RECONNECT_INITIAL_DELAY_MS before the first
+     * attempt and twice as long before each further one, up to reconnectMaxDelayMs. Runs on the
+     * reader thread; the writer waits meanwhile.
+     *
+     * @return false if the connection was closed first
+     */
+    private boolean reconnect() throws InterruptedException {
+        String lostName = transport.getName();
+        lock.lock();
+        try {
+            linkDown = true;
+        } finally {
+            lock.unlock();
+        }
+        transport.close();
+        System.err.println("Serial I/O: lost " + lostName + ", reconnecting");
+        long delayMs = RECONNECT_INITIAL_DELAY_MS;
+        while (true) {
+            if (!pause(delayMs)) return false;
+            try {
+                transport.reopen(config, blockingReads);
                 break;
+            } catch (IOException e) {
+                delayMs = Math.min(delayMs * 2, config.getReconnectMaxDelayMs());
             }
         }
+        pendingLength = 0;
+        discardLine = false;
+        discardPending = false;
+        lock.lock();
+        try {
+            resetSession();
+            linkDown = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        metrics.opened();
+        System.err.println("Serial I/O: reconnected to " + transport.getName());
+        return true;
+    }
+
+    // Sleeps, unless close() comes first
+    private boolean pause(long delayMs) throws InterruptedException {
+        lock.lock();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(delayMs);
+            while (running && remainingNanos > 0) {
+                remainingNanos = changed.awaitNanos(remainingNanos);
+            }
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called on the reader thread when the ROM's boot banner shows the device has restarted: it
+     * has forgotten the handshake, its credit and the binary and baud modes.
+     */
+    private void deviceRestarted() {
+        lock.lock();
+        try {
+            boolean wasConnected = handshakeComplete;
+            resetSession();
+            changed.signalAll();
+            // A board restarts when the port is opened, before any handshake
+            if (!wasConnected) return;
+        } finally {
+            lock.unlock();
+        }
+        metrics.opened();
+        System.err.println("Serial I/O: " + transport.getName() + " restarted, repeating the handshake");
+    }
+
+    /**
+     * Forgets what was agreed with the device, so the writer starts over with the handshake.
+     * Queued commands are kept. Called with lock held.
+     */
+    private void resetSession() {
+        session++;
+        credits = 0;
+        grantFollowsHandshake = false;
+        lastHandshakeAttempt = 0;
+        handshakeComplete = false;
+        binaryRequestSent = false;
+        binary = false;
+        baudSwitchAttempted = false;
+        baudRequestedAt = 0;
+        baudSwitchedAt = 0;
+        if (baudRate != config.getBaudRate()) transport.setBaudRate(config.getBaudRate());
+        baudRate = config.getBaudRate();
     }
 
     /**
-     * Closes the serial connection and stops background thread.
+     * Adds the protocol requests that are due and every message the device has room for to
+     * batch. Called with lock held.
+     *
+     * @return how long the writer may sleep if nothing else changes
+     */
+    private long prepareBatch(WriteBuffer batch, long now) {
+        long waitMs = Long.MAX_VALUE;
+
+        // The device may still be booting, so repeat the handshake until it answers
+        if (!handshakeComplete) {
+            if (now - lastHandshakeAttempt >= HANDSHAKE_RETRY_MS) {
+                batch.write(HANDSHAKE_REQUEST);
+                batchMessages++;
+                lastHandshakeAttempt = now;
+            }
+            waitMs = Math.min(waitMs, lastHandshakeAttempt + HANDSHAKE_RETRY_MS - now);
+        }
+
+        if (handshakeComplete && config.getSwitchBaudRate() > 0 && !baudSwitchAttempted) {
+            batch.write(BAUD_PREFIX_BYTES);
+            batch.writeDecimal(config.getSwitchBaudRate());
+            batch.write('\n');
+            batchMessages++;
+            baudSwitchAttempted = true;
+            baudRequestedAt = now;
+        }
+
+        // Firmware without Javono_baud never answers; carry on at the base rate
+        if (baudRequestedAt != 0 && now - baudRequestedAt >= BAUD_CONFIRM_MS) {
+            System.err.println("Serial I/O: device did not accept " + config.getSwitchBaudRate() + " baud, staying at " + baudRate);
+            baudRequestedAt = 0;
+        }
+
+        // No handshake at the new rate: the device goes back to the base rate, so follow it
+        if (baudSwitchedAt != 0 && now - baudSwitchedAt >= BAUD_CONFIRM_MS) {
+            System.err.println("Serial I/O: no handshake at " + baudRate + " baud, staying at " + config.getBaudRate());
+            setBaudRate(config.getBaudRate());
+            baudSwitchedAt = 0;
+        }
+        if (baudRequestedAt != 0) waitMs = Math.min(waitMs, baudRequestedAt + BAUD_CONFIRM_MS - now);
+        if (baudSwitchedAt != 0) waitMs = Math.min(waitMs, baudSwitchedAt + BAUD_CONFIRM_MS - now);
+
+        boolean switchingBaud = baudRequestedAt != 0 || baudSwitchedAt != 0;
+        if (handshakeComplete && !switchingBaud && binaryRequested && !binaryRequestSent) {
+            batch.write(BINARY_MODE_BYTES);
+            batch.write('\n');
+            batchMessages++;
+            binaryRequestSent = true;
+        }
+
+        // Everything the device has room for goes out in one write. Nothing is sent between
+        // the binary mode request and its answer, since the device decodes whatever follows
+        // the request as frames, nor while the baud rate is changing.
+        boolean switchingMode = (binaryRequestSent && !binary) || switchingBaud;
+        long holdMs = switchingMode ? 0 : coalesceHoldMs();
+        if (holdMs > 0) waitMs = Math.min(waitMs, holdMs);
+        while (credits > 0 && !switchingMode && holdMs == 0) {
+            Outgoing message = writeQueue.poll();
+            if (message == null) break;
+            queuedBytes -= message.payload.length;
+            if (binary) {
+                batch.writeFrame(message.type, txSequence++, message.requestId, message.payload);
+            } else if (message.type == Frame.TYPE_TEXT) {
+                batch.write(message.payload);
+                batch.write('\n');
+            } else if (message.type == Frame.TYPE_REQUEST) {
+                batch.write(REQUEST_PREFIX_BYTES);
+                batch.writeDecimal(message.requestId);
+                batch.write(' ');
+                batch.write(message.payload);
+                batch.write('\n');
+            } else {
+                System.err.println("Serial I/O: dropped binary payload, device left binary mode");
+                continue;
+            }
+            credits--;
+            batchMessages++;
+            if (batchQueuedCount == batchQueued.length) batchQueued = Arrays.copyOf(batchQueued, batchQueuedCount * 2);
+            batchQueued[batchQueuedCount++] = message;
+        }
+        metrics.writeQueueDepth(writeQueue.size());
+        return Math.max(1, waitMs);
+    }
+
+    /**
+     * Decides whether waiting messages should wait for more to join them. They go now once they
+     * add up to coalesceMaxBytes, once they use up the device's credit (more could not go along
+     * anyway), or once the oldest has waited coalesceDelayMs. Called with lock held.
+     *
+     * @return how many milliseconds to hold them back, or 0 to send them
+     */
+    private long coalesceHoldMs() {
+        Outgoing oldest = writeQueue.peek();
+        if (config.getCoalesceDelayMs() == 0 || oldest == null || credits == 0) return 0;
+        if (queuedBytes >= config.getCoalesceMaxBytes() || writeQueue.size() >= credits) return 0;
+        long waitedNanos = System.nanoTime() - oldest.queuedAt;
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(config.getCoalesceDelayMs()) - waitedNanos;
+        return remainingNanos <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1;
+    }
+
+    /**
+     * Splits received bytes into lines (text mode) or frames (binary mode). The mode can change
+     * in the middle of a read, so the delimiter is chosen per byte. A message that arrived whole
+     * is handled where it lies in data; only the tail of a read is kept in pending.
+     */
+    private void receive(byte[] data, int length) throws InterruptedException {
+        if (discardPending) {
+            discardPending = false;
+            pendingLength = 0;
+        }
+        // The restarted device talks text, so the rest of this read is split into lines
+        if (binary && indexOfLine(data, length, RESET_BANNER_BYTES) >= 0) {
+            deviceRestarted();
+            pendingLength = 0;
+            discardLine = false;
+        }
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (data[i] != (binary ? 0 : '\n')) continue;
+            if (discardLine) {
+                discardLine = false;
+            } else if (pendingLength == 0) {
+                handleMessage(data, start, i - start);
+            } else {
+                if (append(data, start, i - start)) handleMessage(pending, 0, pendingLength);
+                pendingLength = 0;
+                discardLine = false;
+            }
+            start = i + 1;
+        }
+        append(data, start, length - start);
+    }
+
+    /**
+     * Adds the unfinished part of a message to pending. A message too long for it would be
+     * dropped by the streams anyway, so it is dropped here, without buffering the rest of it.
+     *
+     * @return false if the message is being dropped
+     */
+    private boolean append(byte[] data, int offset, int length) {
+        if (discardLine) return false;
+        if (pendingLength + length > pending.length) {
+            pendingLength = 0;
+            discardLine = true;
+            metrics.messageDropped();
+            return false;
+        }
+        System.arraycopy(data, offset, pending, pendingLength, length);
+        pendingLength += length;
+        return true;
+    }
+
+    private void handleMessage(byte[] buffer, int offset, int length) throws InterruptedException {
+        metrics.frameIn();
+        if (binary) {
+            handleFrame(buffer, offset, length);
+        } else {
+            handleLine(buffer, offset, length);
+        }
+    }
+
+    private void handleLine(byte[] buffer, int offset, int length) throws InterruptedException {
+        // Like String.trim(): drops the 0x00 around a handshake and a trailing \r
+        int start = offset;
+        int end = offset + length;
+        while (start < end && (buffer[start] & 0xFF) <= ' ') start++;
+        while (end > start && (buffer[end - 1] & 0xFF) <= ' ') end--;
+
+        // The banner is still shown as the device's output
+        if (startsWith(buffer, start, end, RESET_BANNER_BYTES)) deviceRestarted();
+        if (startsWith(buffer, start, end, RESPONSE_PREFIX_BYTES)) {
+            // "Javono_rsp <id> <reply>"
+            int idStart = start + RESPONSE_PREFIX_BYTES.length;
+            int idEnd = idStart;
+            while (idEnd < end && buffer[idEnd] != ' ') idEnd++;
+            int textStart = Math.min(idEnd + 1, end);
+            try {
+                handleResponse(parseInt(buffer, idStart, idEnd), buffer, textStart, end - textStart);
+            } catch (NumberFormatException e) {
+                offer(lines, MessageStream.KIND_TEXT, buffer, offset, length);
+            }
+        } else if (startsWith(buffer, start, end, LOG_PREFIX_BYTES)) {
+            offer(lines, MessageStream.KIND_LOG_LINE, buffer, start, end - start);
+        } else if (startsWith(buffer, start, end, TELEMETRY_PREFIX_BYTES)) {
+            telemetry.accept(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+        } else if (!handleProtocolLine(buffer, start, end)) {
+            offer(lines, MessageStream.KIND_TEXT, buffer, offset, length);
+        }
+    }
+
+    /**
+     * Applies a line of the protocol itself.
+     *
+     * @return false if the line belongs to the sketch
+     */
+    private boolean handleProtocolLine(byte[] buffer, int start, int end) {
+        boolean handshakeReply = equals(buffer, start, end, HANDSHAKE_REPLY_BYTES);
+        boolean credit = startsWith(buffer, start, end, CREDIT_PREFIX_BYTES);
+        boolean baudReply = startsWith(buffer, start, end, BAUD_PREFIX_BYTES);
+        boolean binaryReply = equals(buffer, start, end, BINARY_MODE_BYTES);
+        if (!handshakeReply && !credit && !baudReply && !binaryReply) return false;
+
+        lock.lock();
+        try {
+            if (handshakeReply) {
+                if (baudSwitchedAt != 0) {
+                    baudSwitchedAt = 0;
+                    System.err.println("Serial I/O: switched to " + baudRate + " baud");
+                }
+                handshakeComplete = true;
+                grantFollowsHandshake = true;
+                // The device returns to text mode on every handshake
+                binary = false;
+                binaryRequestSent = false;
+            } else if (credit) {
+                grant(parseInt(buffer, start + CREDIT_PREFIX_BYTES.length, end));
+            } else if (baudReply) {
+                if (baudRequestedAt == 0) return false;
+                // The device has switched; handshake again at the new rate to confirm it
+                baudRequestedAt = 0;
+                setBaudRate(parseInt(buffer, start + BAUD_PREFIX_BYTES.length, end));
+                baudSwitchedAt = System.currentTimeMillis();
+            } else {
+                if (!binaryRequestSent) return false;
+                txSequence = 0;
+                rxSequence = 0;
+                binary = true;
+            }
+            changed.signalAll();
+        } catch (NumberFormatException e) {
+            System.err.println("Serial I/O: malformed protocol line: " + new String(buffer, start, end - start, StandardCharsets.UTF_8));
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    private void handleFrame(byte[] buffer, int offset, int length) throws InterruptedException {
+        if (length == 0) return;
+        // Decoded over the received bytes, which are not needed again
+        int rawLength = Cobs.decodeInPlace(buffer, offset, length);
+        if (rawLength < Frame.OVERHEAD) {
+            frameLost(1);
+            return;
+        }
+        int crcOffset = offset + rawLength - 2;
+        int crc = (buffer[crcOffset] & 0xFF) | (buffer[crcOffset + 1] & 0xFF) << 8;
+        if (Crc16.update(Crc16.INITIAL, buffer, offset, rawLength - 2) != crc) {
+            frameLost(1);
+            return;
+        }
+        int type = buffer[offset] & 0xFF;
+        int sequence = buffer[offset + 1] & 0xFF;
+        int skipped = (sequence - rxSequence) & 0xFF;
+        if (skipped > 0) frameLost(skipped);
+        rxSequence = (sequence + 1) & 0xFF;
+
+        int payload = offset + 2;
+        int payloadLength = rawLength - Frame.OVERHEAD;
+        switch (type) {
+            case Frame.TYPE_TEXT -> {
+                if (startsWith(buffer, payload, payload + payloadLength, TELEMETRY_PREFIX_BYTES)) {
+                    telemetry.accept(new String(buffer, payload, payloadLength, StandardCharsets.UTF_8));
+                } else {
+                    offer(lines, MessageStream.KIND_TEXT, buffer, payload, payloadLength);
+                }
+            }
+            case Frame.TYPE_CREDIT -> {
+                if (payloadLength < 2) return;
+                lock.lock();
+                try {
+                    grant((buffer[payload] & 0xFF) | (buffer[payload + 1] & 0xFF) << 8);
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            case Frame.TYPE_DATA -> offer(data, MessageStream.KIND_DATA, buffer, payload, payloadLength);
+            case Frame.TYPE_LOG -> offer(lines, MessageStream.KIND_LOG_FRAME, buffer, payload, payloadLength);
+            case Frame.TYPE_RESPONSE -> {
+                if (payloadLength < 2) {
+                    frameLost(1);
+                    return;
+                }
+                int requestId = (buffer[payload] & 0xFF) | (buffer[payload + 1] & 0xFF) << 8;
+                handleResponse(requestId, buffer, payload + 2, payloadLength - 2);
+            }
+            default -> {
+                // Types from newer firmware are ignored
+            }
+        }
+    }
+
+    private void offer(MessageStream<?> stream, int kind, byte[] buffer, int offset, int length) throws InterruptedException {
+        if (!stream.offer(kind, buffer, offset, length)) metrics.messageDropped();
+    }
+
+    private void frameLost(long count) {
+        lostFrames += count;
+        metrics.framesLost(count);
+    }
+
+    private void handleResponse(int requestId, byte[] buffer, int offset, int length) throws InterruptedException {
+        ResponseListener listener = responseListener;
+        if (listener == null) {
+            // Nobody tracks requests; the reply is ordinary output
+            offer(lines, MessageStream.KIND_TEXT, buffer, offset, length);
+        } else {
+            listener.onResponse(requestId, new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Called with lock held, from the reader or the writer
+    private void setBaudRate(int newBaudRate) {
+        transport.setBaudRate(newBaudRate);
+        baudRate = newBaudRate;
+        // Bytes split across the change are garbage, and the device only grants credit again
+        // after the next handshake
+        discardPending = true;
+        credits = 0;
+        handshakeComplete = false;
+        lastHandshakeAttempt = 0;
+    }
+
+    private void grant(int granted) {
+        // A handshake grant covers the device's whole free line buffer, so it replaces
+        // any credit left over, e.g. when the device answered two handshake attempts
+        credits = grantFollowsHandshake ? granted : credits + granted;
+        grantFollowsHandshake = false;
+    }
+
+    private static boolean startsWith(byte[] buffer, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[start + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    // Finds word at the start of a line or after a frame delimiter
+    private static int indexOfLine(byte[] buffer, int length, byte[] word) {
+        for (int i = 0; i + word.length <= length; i++) {
+            boolean lineStart = i == 0 || buffer[i - 1] == '\n' || buffer[i - 1] == 0;
+            if (lineStart && startsWith(buffer, i, length, word)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean equals(byte[] buffer, int start, int end, byte[] word) {
+        return end - start == word.length && startsWith(buffer, start, end, word);
+    }
+
+    private static int parseInt(byte[] buffer, int start, int end) {
+        while (start < end && buffer[start] == ' ') start++;
+        if (start == end) throw new NumberFormatException("empty number");
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+            }
+            if (value > (Integer.MAX_VALUE - digit) / 10) throw new NumberFormatException("too large");
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns true once the device has answered the flash/thunder handshake.
+     */
+    public boolean isHandshakeComplete() {
+        return handshakeComplete;
+    }
+
+    /**
+     * Sets the dictionary used to turn the device's Javono_log() messages into text.
+     */
+    public void setLogDecoder(LogDecoder logDecoder) {
+        this.logDecoder = logDecoder;
+    }
+
+    /**
+     * Sets who receives the device's replies to {@link #writeRequest}. It is called on the reader
+     * thread and must not block.
+     */
+    public void setResponseListener(ResponseListener responseListener) {
+        this.responseListener = responseListener;
+    }
+
+    /**
+     * Returns the loop timing telemetry received from the device.
+     */
+    public TelemetryAggregator getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Returns the baud rate the port currently runs at.
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    /**
+     * Closes the serial connection and stops background thread. Prints the loop telemetry
+     * totals if the device sent any.
      */
     public void close() {
+        boolean wasRunning = running;
         running = false;
-        if (ioThread != null) {
+        lines.close();
+        data.close();
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread thread : new Thread[]{writerThread, readerThread}) {
+            if (thread == null) continue;
             try {
-                ioThread.join(500);
+                thread.join(500);
             } catch (InterruptedException ignored) {}
         }
 
-        if (in != null) try { in.close(); } catch (IOException ignored) {}
-        if (out != null) try { out.close(); } catch (IOException ignored) {}
-        if (comPort != null) comPort.closePort();
-
-        in = null;
-        out = null;
-        comPort = null;
+        transport.close();
+        if (wasRunning && !telemetry.isEmpty()) telemetry.printSummary();
     }
 
     /**
-     * Checks if the serial connection is alive.
+     * Checks if the serial connection is alive: open, and neither thread has hit an I/O error.
      */
     public boolean isConnected() {
-        return comPort != null && comPort.isOpen();
+        return transport.isOpen() && !failed && !linkDown;
+    }
+
+    /**
+     * Returns true while a lost port is being reopened; commands written meanwhile are queued.
+     */
+    public boolean isReconnecting() {
+        return linkDown && running && !failed;
+    }
+
+    /**
+     * Returns the port's current name, which changes if the board came back under another name.
+     */
+    public String getPortName() {
+        return transport.getName();
+    }
+
+    /**
+     * Returns the bytes read from the port since it was opened, including protocol messages.
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the bytes written to the port since it was opened, including protocol messages.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns when the last bytes arrived, in System.currentTimeMillis() terms, or 0 if none have.
+     */
+    public long getLastReceiveMillis() {
+        return lastReceiveMillis;
+    }
+
+    /**
+     * Receives the device's reply to a request sent with {@link #writeRequest}.
+     */
+    public interface ResponseListener {
+        void onResponse(int requestId, String text);
+    }
+
+    private static class Outgoing {
+        private final int type;
+        private final int requestId;
+        private final byte[] payload;
+        private final long queuedAt = System.nanoTime();
+
+        private Outgoing(int type, int requestId, byte[] payload) {
+            this.type = type;
+            this.requestId = requestId;
+            this.payload = payload;
+        }
     }
 }
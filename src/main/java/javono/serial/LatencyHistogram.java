@@ -0,0 +1,89 @@
+package javono.serial;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies without allocating or locking, so the reader and writer threads can time
+ * every message. Values go into fixed buckets an eighth of a power of two wide, which keeps
+ * percentiles within about 12% of the true value.
+ */
+final class LatencyHistogram {
+
+    // Buckets per power of two; values below LINEAR get a bucket each
+    private static final int SUB_BUCKETS = 8;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Another thread recorded a new maximum; compare with that
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    double getMeanMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (n * 1000.0);
+    }
+
+    double getMaxMicros() {
+        return max.get() / 1000.0;
+    }
+
+    /**
+     * Returns the latency below which the given fraction of values lie, or 0 if none were recorded.
+     */
+    double percentileMicros(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                // The middle of the bucket, but never above the largest value seen
+                long lower = lowerBound(i);
+                long middle = i < LINEAR ? lower : lower + (lowerBound(i + 1) - lower) / 2;
+                return Math.min(middle, max.get()) / 1000.0;
+            }
+        }
+        return getMaxMicros();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < LINEAR) return index;
+        if (index >= BUCKETS) return Long.MAX_VALUE;
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (index - LINEAR) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - 3);
+    }
+}
@@ -0,0 +1,129 @@
+package javono.serial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Turns the tokenized log messages of Javono_log() back into text, using the format strings
+ * the generator stored in .javono/build/log-dictionary.properties.
+ * <p>
+ * In binary mode a message is a {@link Frame#TYPE_LOG} frame whose payload is the message ID
+ * (unsigned 16-bit little-endian) followed by each argument as a zigzag varint. In text mode it
+ * is a line "Javono_log &lt;id&gt; &lt;args...&gt;".
+ */
+public class LogDecoder {
+
+    static final String PREFIX = "Javono_log ";
+
+    private final Map<Integer, String> formats = new HashMap<>();
+    private final Map<Integer, String> levels = new HashMap<>();
+
+    private LogDecoder() {
+    }
+
+    public static LogDecoder empty() {
+        return new LogDecoder();
+    }
+
+    /**
+     * Reads a log dictionary written by the project generator. A missing file gives a decoder
+     * that prints the raw IDs.
+     */
+    public static LogDecoder load(Path dictionaryFile) throws IOException {
+        LogDecoder decoder = new LogDecoder();
+        if (!Files.exists(dictionaryFile)) return decoder;
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(dictionaryFile)) {
+            properties.load(in);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith("log.") || !key.endsWith(".format")) continue;
+            int id = Integer.parseInt(key.substring("log.".length(), key.length() - ".format".length()));
+            decoder.formats.put(id, properties.getProperty(key));
+            decoder.levels.put(id, properties.getProperty("log." + id + ".level", "info"));
+        }
+        return decoder;
+    }
+
+    /**
+     * Returns the message of a "Javono_log ..." line, or null if the line is something else.
+     */
+    public String decodeLine(String line) {
+        if (!line.startsWith(PREFIX)) return null;
+        String[] fields = line.substring(PREFIX.length()).trim().split(" +");
+        try {
+            int[] args = new int[fields.length - 1];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = Integer.parseInt(fields[i + 1]);
+            }
+            return format(Integer.parseInt(fields[0]), args);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the message of a LOG frame payload, or null if the payload is malformed.
+     */
+    public String decodeFrame(byte[] payload) {
+        return decodeFrame(payload, 0, payload.length);
+    }
+
+    /**
+     * Returns the message of the LOG frame payload at buffer[offset..offset+length), or null if
+     * it is malformed.
+     */
+    public String decodeFrame(byte[] buffer, int offset, int length) {
+        if (length < 2) return null;
+        int end = offset + length;
+        int id = (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+
+        int[] args = new int[length - 2];
+        int count = 0;
+        int position = offset + 2;
+        while (position < end) {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (position == end || shift > 28) return null;
+                b = buffer[position++] & 0xFF;
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            args[count++] = (value >>> 1) ^ -(value & 1);
+        }
+        int[] decoded = new int[count];
+        System.arraycopy(args, 0, decoded, 0, count);
+        return format(id, decoded);
+    }
+
+    // Same output as javono.lib.Log prints when the sketch runs on the JVM
+    private String format(int id, int[] args) {
+        String format = formats.get(id);
+        StringBuilder raw = new StringBuilder("log #").append(id);
+        for (int arg : args) raw.append(' ').append(arg);
+        if (format == null) {
+            return raw.append(" (not in log-dictionary.properties; was the firmware built from this sketch?)").toString();
+        }
+
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            values[i] = args[i];
+        }
+        String level = levels.get(id).substring(0, 1).toUpperCase(Locale.ROOT);
+        try {
+            return level + " " + String.format(format, values);
+        } catch (IllegalFormatException e) {
+            return level + " " + raw + " (arguments do not match \"" + format + "\")";
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package javono.serial;
+
+import javono.config.SerialConfig;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One end of an in-memory serial link. What one end writes, the other reads; {@link #getPeer()}
+ * returns the other end, e.g. for a {@link FakeDevice}. Each direction buffers a fixed number of
+ * bytes and a writer waits while it is full, as a UART whose receiver stops reading would stall.
+ */
+public final class LoopbackTransport implements SerialTransport {
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final long READ_TIMEOUT_MS = 100;
+
+    private final String name;
+    private final Pipe incoming;
+    private final Pipe outgoing;
+    private final LoopbackTransport peer;
+    private volatile boolean open = false;
+    private volatile boolean blockingReads = true;
+
+    /**
+     * Creates both ends of a link; this is the host's end.
+     */
+    public LoopbackTransport(String name) {
+        this.name = name;
+        this.incoming = new Pipe();
+        this.outgoing = new Pipe();
+        this.peer = new LoopbackTransport(name + "-device", outgoing, incoming, this);
+    }
+
+    private LoopbackTransport(String name, Pipe incoming, Pipe outgoing, LoopbackTransport peer) {
+        this.name = name;
+        this.incoming = incoming;
+        this.outgoing = outgoing;
+        this.peer = peer;
+    }
+
+    /**
+     * Returns the other end of the link.
+     */
+    public LoopbackTransport getPeer() {
+        return peer;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Opens this end. Bytes the other end wrote before are kept, like a device that talks before
+     * the host opens its port.
+     */
+    @Override
+    public void open(SerialConfig config, boolean blockingReads) {
+        this.blockingReads = blockingReads;
+        incoming.reopen();
+        outgoing.reopen();
+        open = true;
+    }
+
+    @Override
+    public int read(byte[] buffer, int length) {
+        if (!open) return -1;
+        try {
+            return incoming.read(buffer, length, blockingReads ? READ_TIMEOUT_MS : 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    @Override
+    public void awaitData(long timeoutMs) throws InterruptedException {
+        if (open) incoming.awaitData(timeoutMs);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (!open) throw new IOException("Loopback is closed: " + name);
+        try {
+            outgoing.write(data, offset, length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing to " + name);
+        }
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) {
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Closes this end; the other end's reads then fail once they have taken what was written.
+     */
+    @Override
+    public void close() {
+        open = false;
+        incoming.close();
+        outgoing.close();
+    }
+
+    // A bounded byte queue for one direction
+    private static final class Pipe {
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private int head = 0;
+        private int size = 0;
+        private boolean closed = false;
+
+        private void write(byte[] data, int offset, int length) throws InterruptedException, IOException {
+            lock.lockInterruptibly();
+            try {
+                while (length > 0) {
+                    while (size == buffer.length && !closed) notFull.await();
+                    if (closed) throw new IOException("Loopback is closed");
+                    int tail = (head + size) % buffer.length;
+                    int count = Math.min(length, Math.min(buffer.length - size, buffer.length - tail));
+                    System.arraycopy(data, offset, buffer, tail, count);
+                    size += count;
+                    offset += count;
+                    length -= count;
+                    notEmpty.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int read(byte[] target, int length, long timeoutMs) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                while (size == 0) {
+                    if (closed) return -1;
+                    if (remaining <= 0) return 0;
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+                int count = Math.min(length, Math.min(size, buffer.length - head));
+                System.arraycopy(buffer, head, target, 0, count);
+                head = (head + count) % buffer.length;
+                size -= count;
+                notFull.signalAll();
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void awaitData(long timeoutMs) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                while (size == 0 && !closed && remaining > 0) {
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void reopen() {
+            lock.lock();
+            try {
+                closed = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package javono.serial;
+
+import javono.config.SerialConfig.OverflowPolicy;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded stream of complete messages from the device, either lines or binary payloads.
+ * It can be read by polling, with the blocking {@link #iterator()}, or through one
+ * {@link Flow.Subscriber} at a time; each message goes to exactly one of them.
+ * <p>
+ * Messages are kept as bytes in a preallocated {@link ByteRing} and only turned into objects
+ * when they are read. {@link #poll(MessageHandler)} and {@link #take(MessageHandler)} skip that
+ * step and hand over the bytes themselves, so a consumer that uses them receives without
+ * allocating.
+ * <p>
+ * When the ring is full the {@link OverflowPolicy} decides: BLOCK stops reading the port until
+ * there is room, which in turn stalls the device once its TX buffer fills; DROP_OLDEST and
+ * DROP_NEWEST keep reading and count what they throw away.
+ */
+public class MessageStream<T> implements Flow.Publisher<T>, Iterable<T> {
+
+    /** A line of text. */
+    public static final int KIND_TEXT = 0;
+    /** A text-mode "Javono_log ..." line, not yet decoded. */
+    public static final int KIND_LOG_LINE = 1;
+    /** The payload of a LOG frame, not yet decoded. */
+    public static final int KIND_LOG_FRAME = 2;
+    /** A binary payload. */
+    public static final int KIND_DATA = 3;
+
+    /**
+     * Receives a message as bytes. The array belongs to the stream and is only valid during the call.
+     */
+    public interface MessageHandler {
+        void onMessage(int kind, byte[] buffer, int length);
+    }
+
+    /**
+     * Builds the object handed out for a message; called on the consumer's thread.
+     */
+    interface Decoder<T> {
+        T decode(int kind, byte[] buffer, int length);
+    }
+
+    private final String name;
+    private final ByteRing ring;
+    private final Decoder<T> decoder;
+    // Serializes consumers, so the ring only ever sees one; never held while waiting
+    private final ReentrantLock consumerLock = new ReentrantLock();
+    // Held by the one consumer allowed to wait for a message, so polling never waits behind it
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final ByteRing.Record record = new ByteRing.Record();
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    MessageStream(String name, int capacityBytes, OverflowPolicy policy, Decoder<T> decoder) {
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + capacityBytes);
+        }
+        this.name = name;
+        this.ring = new ByteRing(capacityBytes, policy);
+        this.decoder = decoder;
+    }
+
+    /**
+     * Adds a message from the reader thread, applying the overflow policy. The bytes are copied.
+     *
+     * @return false if this message was dropped
+     */
+    boolean offer(int kind, byte[] buffer, int offset, int length) throws InterruptedException {
+        return ring.offer(kind, buffer, offset, length);
+    }
+
+    /**
+     * Returns the next message, waiting for one, or null once the stream is closed and empty.
+     */
+    public T take() throws InterruptedException {
+        return next(Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the next message, or null if none arrives within the timeout.
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return next(Math.max(1, unit.toNanos(timeout)));
+    }
+
+    /**
+     * Returns the next message if one is waiting, or null.
+     */
+    public T poll() {
+        try {
+            return next(0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private T next(long timeoutNanos) throws InterruptedException {
+        if (timeoutNanos == 0) return tryNext();
+        long deadline = System.nanoTime() + timeoutNanos;
+        waitLock.lockInterruptibly();
+        try {
+            while (true) {
+                T message = tryNext();
+                if (message != null) return message;
+                long remaining = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (remaining <= 0 || !ring.await(remaining)) return tryNext();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private T tryNext() {
+        consumerLock.lock();
+        try {
+            if (!ring.poll(record)) return null;
+            return decoder.decode(record.kind, record.bytes, record.length);
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * Passes the next message to handler if one is waiting, without creating any objects.
+     *
+     * @return false if there was no message
+     */
+    public boolean poll(MessageHandler handler) {
+        consumerLock.lock();
+        try {
+            if (!ring.poll(record)) return false;
+            handler.onMessage(record.kind, record.bytes, record.length);
+            return true;
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the next message and passes it to handler, without creating any objects.
+     *
+     * @return false once the stream is closed and empty
+     */
+    public boolean take(MessageHandler handler) throws InterruptedException {
+        waitLock.lockInterruptibly();
+        try {
+            while (true) {
+                if (poll(handler)) return true;
+                if (!ring.await(Long.MAX_VALUE)) return poll(handler);
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Moves every waiting message to target without blocking.
+     *
+     * @return the number of messages moved
+     */
+    public int drainTo(Collection<? super T> target) {
+        int count = 0;
+        T message;
+        while ((message = poll()) != null) {
+            target.add(message);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of messages thrown away because the buffer was full or the message
+     * was larger than half of it.
+     */
+    public long getDroppedCount() {
+        return ring.getDropped();
+    }
+
+    /**
+     * Returns the number of messages received from the device, including dropped ones.
+     */
+    public long getReceivedCount() {
+        return ring.getReceived();
+    }
+
+    /**
+     * Returns the bytes waiting to be read, including record headers.
+     */
+    public long getBufferedBytes() {
+        return ring.getBufferedBytes();
+    }
+
+    public int getCapacity() {
+        return ring.getCapacity();
+    }
+
+    /**
+     * Returns the longest message this stream keeps; longer ones are dropped and counted.
+     */
+    public int getMaxMessageLength() {
+        return ring.getMaxRecordLength();
+    }
+
+    /**
+     * Ends the stream: waiting readers get what is left and then the end, a blocked reader
+     * thread is released and a subscriber is completed.
+     */
+    void close() {
+        ring.close();
+    }
+
+    /**
+     * Returns an iterator whose hasNext() waits for the next message and returns false once the
+     * connection is closed and every message has been taken.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private T next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) return true;
+                try {
+                    next = take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                T message = next;
+                next = null;
+                return message;
+            }
+        };
+    }
+
+    /**
+     * Delivers messages to subscriber on its own thread as it requests them. Only one
+     * subscriber is allowed at a time; a second one gets onError.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(name + " already has a subscriber"));
+            return;
+        }
+        Delivery delivery = new Delivery(subscriber);
+        subscriber.onSubscribe(delivery);
+        Thread thread = new Thread(delivery, "JavonoSerial-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private class Delivery implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean cancelled = false;
+        // Signalled by the delivery thread once it stops, so signals never overlap
+        private volatile Throwable error;
+        // True only while the delivery thread waits in take(); only then may cancel() interrupt it
+        private volatile boolean waitingForMessage = false;
+        private volatile Thread thread;
+
+        private Delivery(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (error == null) error = new IllegalArgumentException("request must be positive: " + n);
+                cancel();
+                return;
+            }
+            // Saturates at Long.MAX_VALUE, which means unbounded
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Stops delivery. Often called from onNext, so the subscriber's own code is never
+         * interrupted; only a delivery thread waiting for the next message is.
+         */
+        @Override
+        public void cancel() {
+            cancelled = true;
+            synchronized (this) {
+                notifyAll();
+            }
+            Thread current = thread;
+            if (current != null && waitingForMessage) current.interrupt();
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                while (!cancelled) {
+                    synchronized (this) {
+                        while (demand.get() == 0 && !cancelled) wait();
+                    }
+                    if (cancelled) break;
+                    waitingForMessage = true;
+                    T message;
+                    try {
+                        message = take();
+                    } finally {
+                        waitingForMessage = false;
+                    }
+                    // An interrupt from a cancel() that raced with the message must not reach onNext
+                    Thread.interrupted();
+                    if (cancelled) break;
+                    if (message == null) {
+                        subscriber.onComplete();
+                        break;
+                    }
+                    if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                    subscriber.onNext(message);
+                }
+            } catch (InterruptedException e) {
+                // Cancelled while waiting
+            } catch (RuntimeException e) {
+                if (error == null) error = e;
+            } finally {
+                subscribed.set(false);
+            }
+            Throwable failure = error;
+            if (failure != null) subscriber.onError(failure);
+        }
+    }
+}
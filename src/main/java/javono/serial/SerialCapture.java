@@ -0,0 +1,186 @@
+package javono.serial;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Records device output into memory-mapped segment files, so a soak test can run for days
+ * without the host keeping its output in memory. Each record is [epoch millis][length][UTF-8
+ * bytes]; a zero timestamp marks the end of what was written. When a segment is full the next
+ * one starts, and the oldest are deleted beyond the configured count.
+ * <p>
+ * Next to each segment, a sparse index holds the time and offset of one record per
+ * INDEX_INTERVAL bytes, so {@link SerialCaptureReader} can start reading at any moment after a
+ * binary search and a short scan. Segments are named after their first record's time, which
+ * orders them and tells which one holds a moment.
+ */
+public class SerialCapture implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    public static final int DEFAULT_MAX_SEGMENTS = 32;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    // [long epoch millis][int length]
+    static final int HEADER = 12;
+    // [long epoch millis][int offset]
+    static final int INDEX_ENTRY = 12;
+    static final int INDEX_INTERVAL = 64 * 1024;
+    private static final int MAX_RECORD = 65536;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private MappedByteBuffer segment;
+    private MappedByteBuffer index;
+    private int nextIndexAt = 0;
+    private boolean closed = false;
+
+    /**
+     * @param directory   where the segments go; created if missing. Segments already there are
+     *                    kept and count toward maxSegments, so captures of several runs can be
+     *                    read as one
+     * @param segmentSize bytes per segment file
+     * @param maxSegments how many segments are kept
+     */
+    public SerialCapture(Path directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize < 2 * HEADER) {
+            throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+        }
+        if (maxSegments <= 0) {
+            throw new IllegalArgumentException("Segment count must be positive: " + maxSegments);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+    }
+
+    public void append(long timeMillis, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        append(timeMillis, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Records a message; longer ones are cut at 64 KiB or what fits in a segment. Messages that
+     * arrive after {@link #close()} are dropped.
+     */
+    public synchronized void append(long timeMillis, byte[] data, int offset, int length) throws IOException {
+        if (timeMillis <= 0) throw new IllegalArgumentException("Capture time must be positive: " + timeMillis);
+        if (closed) return;
+        length = Math.min(length, Math.min(MAX_RECORD, segmentSize - HEADER));
+        if (segment == null || segment.remaining() < HEADER + length) roll(timeMillis);
+
+        int position = segment.position();
+        if (position >= nextIndexAt) {
+            index.putLong(timeMillis).putInt(position);
+            nextIndexAt = position + INDEX_INTERVAL;
+        }
+        segment.put(position + HEADER, data, offset, length);
+        segment.putInt(position + 8, length);
+        // Written last, so a reader never sees a record that is only half there
+        segment.putLong(position, timeMillis);
+        segment.position(position + HEADER + length);
+    }
+
+    private void roll(long timeMillis) throws IOException {
+        flush();
+        // Records are never cut short by a roll, so a segment's entries all fit in its index
+        int indexSize = (segmentSize / INDEX_INTERVAL + 2) * INDEX_ENTRY;
+        long name = timeMillis;
+        while (Files.exists(segmentPath(directory, name))) name++;
+        segment = map(segmentPath(directory, name), segmentSize);
+        index = map(indexPath(segmentPath(directory, name)), indexSize);
+        nextIndexAt = 0;
+        prune();
+    }
+
+    // The file is sparse until written, so a fresh segment costs no disk space
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void prune() {
+        List<Path> segments;
+        try {
+            segments = listSegments(directory);
+        } catch (IOException e) {
+            System.err.println("Serial capture: could not list " + directory + ": " + e.getMessage());
+            return;
+        }
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            try {
+                Files.deleteIfExists(indexPath(segments.get(i)));
+                Files.deleteIfExists(segments.get(i));
+            } catch (IOException e) {
+                // Still mapped on some systems; tried again at the next roll
+                System.err.println("Serial capture: could not delete " + segments.get(i) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes what was recorded so far to disk; the OS does so anyway, this only makes it certain.
+     */
+    public synchronized void flush() {
+        try {
+            if (segment != null) segment.force();
+            if (index != null) index.force();
+        } catch (UncheckedIOException e) {
+            System.err.println("Serial capture: could not flush " + directory + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        flush();
+        segment = null;
+        index = null;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    static Path segmentPath(Path directory, long firstTimeMillis) {
+        return directory.resolve(String.format("%s%013d%s", SEGMENT_PREFIX, firstTimeMillis, SEGMENT_SUFFIX));
+    }
+
+    static Path indexPath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    static long firstTimeMillis(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Returns the segments in a directory, oldest first.
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package javono.serial;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Reads what a {@link SerialCapture} recorded, from any moment on. The segment holding that
+ * moment is found by name and the spot within it through its sparse index, so only the pages
+ * that are actually read are loaded, however large the capture is. It can read while the
+ * capture is still being written.
+ */
+public class SerialCaptureReader {
+
+    /**
+     * Receives records in time order.
+     */
+    public interface RecordHandler {
+        /**
+         * @return false to stop reading
+         */
+        boolean onRecord(long timeMillis, String text);
+    }
+
+    private final Path directory;
+
+    public SerialCaptureReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Hands every record from fromMillis up to and including toMillis to handler.
+     */
+    public void read(long fromMillis, long toMillis, RecordHandler handler) throws IOException {
+        List<Path> segments = SerialCapture.listSegments(directory);
+        // The last segment that starts no later than fromMillis holds it, if any does
+        int first = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (SerialCapture.firstTimeMillis(segments.get(i)) <= fromMillis) first = i;
+        }
+        byte[] text = new byte[256];
+        for (int i = first; i < segments.size(); i++) {
+            Path segmentPath = segments.get(i);
+            if (SerialCapture.firstTimeMillis(segmentPath) > toMillis) return;
+            MappedByteBuffer segment;
+            try {
+                segment = map(segmentPath);
+            } catch (IOException e) {
+                // Deleted by the capture's retention since it was listed
+                if (Files.exists(segmentPath)) throw e;
+                continue;
+            }
+            int position = i == first ? seek(SerialCapture.indexPath(segmentPath), fromMillis) : 0;
+            while (position + SerialCapture.HEADER <= segment.limit()) {
+                long time = segment.getLong(position);
+                if (time == 0) break;
+                int length = segment.getInt(position + 8);
+                if (length < 0 || position + SerialCapture.HEADER + length > segment.limit()) break;
+                if (time > toMillis) return;
+                if (time >= fromMillis) {
+                    if (text.length < length) text = new byte[Math.max(length, text.length * 2)];
+                    segment.get(position + SerialCapture.HEADER, text, 0, length);
+                    if (!handler.onRecord(time, new String(text, 0, length, StandardCharsets.UTF_8))) return;
+                }
+                position += SerialCapture.HEADER + length;
+            }
+        }
+    }
+
+    /**
+     * Returns the time of the first record, or 0 if nothing was recorded.
+     */
+    public long getFirstTimeMillis() throws IOException {
+        List<Path> segments = SerialCapture.listSegments(directory);
+        return segments.isEmpty() ? 0 : SerialCapture.firstTimeMillis(segments.get(0));
+    }
+
+    // Offset of the last indexed record at or before fromMillis; reading starts there
+    private static int seek(Path indexPath, long fromMillis) throws IOException {
+        if (!Files.exists(indexPath)) return 0;
+        MappedByteBuffer index = map(indexPath);
+        // Entries not written yet are zero and sort after every real one
+        int low = 0;
+        int high = index.limit() / SerialCapture.INDEX_ENTRY - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long time = index.getLong(middle * SerialCapture.INDEX_ENTRY);
+            if (time != 0 && time <= fromMillis) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found < 0 ? 0 : index.getInt(found * SerialCapture.INDEX_ENTRY + 8);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
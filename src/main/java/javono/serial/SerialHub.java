@@ -0,0 +1,441 @@
+package javono.serial;
+
+import javono.config.SerialConfig;
+import javono.logger.LoggerFacade;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Opens and supervises many serial ports at once, e.g. a rig of boards on USB hubs. Every port's
+ * reader, writer and line pump runs on a virtual thread, so a hundred ports do not need hundreds
+ * of platform threads.
+ * <p>
+ * Lines from all ports are merged into one queue, tagged with their port. When it is full the
+ * pumps wait, and each port's own {@link SerialConfig.OverflowPolicy} decides what happens to
+ * its further input. A supervisor reopens ports that failed and samples throughput once a second.
+ */
+public class SerialHub implements AutoCloseable {
+
+    private static final long SUPERVISE_INTERVAL_MS = 1000;
+    private static final int MERGED_CAPACITY = 4096;
+
+    private final SerialConfig config;
+    private final ThreadFactory threads = Thread.ofVirtual().name("JavonoSerialHub-", 0).factory();
+    private final Map<String, Port> ports = new ConcurrentSkipListMap<>();
+    private final BlockingQueue<TaggedLine> merged = new LinkedBlockingQueue<>(MERGED_CAPACITY);
+    private final Thread supervisor;
+    private volatile boolean closed = false;
+
+    public SerialHub(SerialConfig config) {
+        this.config = config;
+        this.supervisor = threads.newThread(this::supervise);
+        supervisor.setName("JavonoSerialHub-supervisor");
+        supervisor.start();
+    }
+
+    /**
+     * Opens portName and adds it to the hub. A port that cannot be opened yet is kept and
+     * retried by the supervisor.
+     *
+     * @return false if the port could not be opened now
+     */
+    public boolean add(String portName) {
+        if (closed) throw new IllegalStateException("SerialHub is closed");
+        Port port = new Port(portName);
+        if (ports.putIfAbsent(portName, port) != null) {
+            throw new IllegalArgumentException("Port already added: " + portName);
+        }
+        port.lock.lock();
+        try {
+            return port.open();
+        } finally {
+            port.lock.unlock();
+        }
+    }
+
+    /**
+     * Closes portName and removes it from the hub.
+     */
+    public void remove(String portName) {
+        Port port = ports.remove(portName);
+        if (port != null) {
+            port.lock.lock();
+            try {
+                port.close();
+            } finally {
+                port.lock.unlock();
+            }
+        }
+    }
+
+    public Set<String> getPorts() {
+        return ports.keySet();
+    }
+
+    /**
+     * Returns the current connection of portName, or null if it is not connected.
+     */
+    public JavonoSerialThreaded getConnection(String portName) {
+        Port port = ports.get(portName);
+        return port == null ? null : port.connection;
+    }
+
+    /**
+     * Queues command for one port.
+     *
+     * @return false if the port is unknown or not connected
+     */
+    public boolean write(String portName, String command) {
+        Port port = ports.get(portName);
+        return port != null && port.write(command);
+    }
+
+    /**
+     * Queues command for every connected port. Each port sends it as soon as its device has credit.
+     *
+     * @return the number of ports it was queued for
+     */
+    public int broadcast(String command) {
+        int count = 0;
+        for (Port port : ports.values()) {
+            if (port.write(command)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the next line from any port, waiting for one, or null once the hub is closed.
+     */
+    public TaggedLine take() throws InterruptedException {
+        while (!closed) {
+            TaggedLine line = merged.poll(SUPERVISE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (line != null) return line;
+        }
+        return merged.poll();
+    }
+
+    /**
+     * Returns the next line from any port, or null if none arrives within the timeout.
+     */
+    public TaggedLine poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return merged.poll(timeout, unit);
+    }
+
+    /**
+     * Returns a snapshot of every port's health and throughput, sorted by port name.
+     */
+    public List<PortStats> getStats() {
+        List<PortStats> stats = new ArrayList<>();
+        for (Port port : ports.values()) {
+            stats.add(port.stats());
+        }
+        return stats;
+    }
+
+    public void printStats() {
+        LoggerFacade.getInstance().info("----- Javono Serial Hub (" + ports.size() + " ports) -----");
+        getStats().forEach(stats -> LoggerFacade.getInstance().info(stats.toString()));
+        LoggerFacade.getInstance().info("---------------------------------");
+    }
+
+    /**
+     * Closes every port and stops the supervisor. Lines already merged can still be taken.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        supervisor.interrupt();
+        for (String portName : new ArrayList<>(ports.keySet())) {
+            remove(portName);
+        }
+    }
+
+    private void supervise() {
+        try {
+            while (!closed) {
+                Thread.sleep(SUPERVISE_INTERVAL_MS);
+                for (Port port : ports.values()) {
+                    port.lock.lock();
+                    try {
+                        if (closed || ports.get(port.name) != port) continue;
+                        port.sample();
+                        // A connection that is reopening its port is left to it
+                        if (port.connection == null || !(port.connection.isConnected() || port.connection.isReconnecting())) {
+                            port.close();
+                            port.open();
+                        }
+                    } finally {
+                        port.lock.unlock();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * A line from the device on one port.
+     */
+    public static final class TaggedLine {
+        private final String portName;
+        private final String text;
+        private final long receivedAtMillis;
+
+        private TaggedLine(String portName, String text, long receivedAtMillis) {
+            this.portName = portName;
+            this.text = text;
+            this.receivedAtMillis = receivedAtMillis;
+        }
+
+        public String getPortName() {
+            return portName;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Returns when the pump took the line from its port, in System.currentTimeMillis() terms.
+         */
+        public long getReceivedAtMillis() {
+            return receivedAtMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + portName + "] " + text;
+        }
+    }
+
+    /**
+     * Health and throughput of one port. Rates cover the supervisor's last one-second sample.
+     */
+    public static final class PortStats {
+        private final String portName;
+        private final boolean connected;
+        private final boolean reconnecting;
+        private final boolean handshakeComplete;
+        private final long reconnects;
+        private final String lastError;
+        private final long bytesReceived;
+        private final long bytesSent;
+        private final long linesReceived;
+        private final long linesDropped;
+        private final long lostFrames;
+        private final double bytesInPerSecond;
+        private final double bytesOutPerSecond;
+        private final double linesPerSecond;
+        private final long idleMillis;
+
+        private PortStats(Port port, JavonoSerialThreaded connection) {
+            this.portName = port.name;
+            this.connected = connection != null && connection.isConnected();
+            this.reconnecting = connection != null && connection.isReconnecting();
+            this.handshakeComplete = connection != null && connection.isHandshakeComplete();
+            // Counts both the hub's reopens and those the connection made itself
+            this.reconnects = SerialMetrics.forPort(port.name).getReconnects();
+            this.lastError = port.lastError;
+            this.bytesReceived = connection == null ? 0 : connection.getBytesReceived();
+            this.bytesSent = connection == null ? 0 : connection.getBytesSent();
+            this.linesReceived = connection == null ? 0 : connection.lines().getReceivedCount();
+            this.linesDropped = connection == null ? 0 : connection.lines().getDroppedCount();
+            this.lostFrames = connection == null ? 0 : connection.getLostFrames();
+            this.bytesInPerSecond = port.bytesInPerSecond;
+            this.bytesOutPerSecond = port.bytesOutPerSecond;
+            this.linesPerSecond = port.linesPerSecond;
+            long last = connection == null ? 0 : connection.getLastReceiveMillis();
+            this.idleMillis = last == 0 ? -1 : System.currentTimeMillis() - last;
+        }
+
+        public String getPortName() {
+            return portName;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /**
+         * Returns true while the connection is reopening its lost port.
+         */
+        public boolean isReconnecting() {
+            return reconnecting;
+        }
+
+        public boolean isHandshakeComplete() {
+            return handshakeComplete;
+        }
+
+        /**
+         * Returns true if the port is connected and its device has answered the handshake.
+         */
+        public boolean isHealthy() {
+            return connected && handshakeComplete;
+        }
+
+        public long getReconnects() {
+            return reconnects;
+        }
+
+        /**
+         * Returns why the port last failed to open, or null.
+         */
+        public String getLastError() {
+            return lastError;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getLinesReceived() {
+            return linesReceived;
+        }
+
+        public long getLinesDropped() {
+            return linesDropped;
+        }
+
+        public long getLostFrames() {
+            return lostFrames;
+        }
+
+        public double getBytesInPerSecond() {
+            return bytesInPerSecond;
+        }
+
+        public double getBytesOutPerSecond() {
+            return bytesOutPerSecond;
+        }
+
+        public double getLinesPerSecond() {
+            return linesPerSecond;
+        }
+
+        /**
+         * Returns the milliseconds since the port last received anything, or -1 if it never has.
+         */
+        public long getIdleMillis() {
+            return idleMillis;
+        }
+
+        @Override
+        public String toString() {
+            String state = isHealthy() ? "ok" : connected ? "no handshake" : reconnecting ? "reconnecting" : "down";
+            String text = String.format("%-16s %-12s in %9.0f B/s  out %9.0f B/s  %7.0f lines/s  dropped %d  lost frames %d  reconnects %d  idle %d ms",
+                    portName, state, bytesInPerSecond, bytesOutPerSecond, linesPerSecond,
+                    linesDropped, lostFrames, reconnects, idleMillis);
+            return lastError != null && !connected ? text + "  (" + lastError + ")" : text;
+        }
+    }
+
+    // Opened, closed and sampled with lock held. Closing a connection waits for its threads, and
+    // a virtual thread blocked inside synchronized would pin its carrier meanwhile.
+    private class Port {
+        private final String name;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile JavonoSerialThreaded connection;
+        private volatile String lastError;
+
+        private long sampledAt = System.nanoTime();
+        private long sampledBytesIn;
+        private long sampledBytesOut;
+        private long sampledLines;
+        private volatile double bytesInPerSecond;
+        private volatile double bytesOutPerSecond;
+        private volatile double linesPerSecond;
+
+        private Port(String name) {
+            this.name = name;
+        }
+
+        private boolean open() {
+            JavonoSerialThreaded opened = new JavonoSerialThreaded(name, config, threads);
+            try {
+                opened.open();
+            } catch (IOException e) {
+                lastError = e.getMessage();
+                return false;
+            }
+            lastError = null;
+            connection = opened;
+            sampledBytesIn = 0;
+            sampledBytesOut = 0;
+            sampledLines = 0;
+            Thread pump = threads.newThread(() -> pump(opened));
+            pump.setName("JavonoSerialHub-pump-" + name);
+            pump.start();
+            return true;
+        }
+
+        // Ends when the connection is closed and its lines are taken, or nobody takes merged lines any more
+        private void pump(JavonoSerialThreaded from) {
+            try {
+                String line;
+                while ((line = from.lines().take()) != null) {
+                    TaggedLine tagged = new TaggedLine(name, line, System.currentTimeMillis());
+                    while (!merged.offer(tagged, SUPERVISE_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                        if (closed || connection != from) return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Hub closed
+            }
+        }
+
+        private void close() {
+            JavonoSerialThreaded current = connection;
+            connection = null;
+            if (current != null) current.close();
+        }
+
+        private boolean write(String command) {
+            JavonoSerialThreaded current = connection;
+            if (current == null || !(current.isConnected() || current.isReconnecting())) return false;
+            current.write(command);
+            return true;
+        }
+
+        private void sample() {
+            JavonoSerialThreaded current = connection;
+            long now = System.nanoTime();
+            double seconds = (now - sampledAt) / 1e9;
+            sampledAt = now;
+            if (current == null || seconds <= 0) {
+                bytesInPerSecond = 0;
+                bytesOutPerSecond = 0;
+                linesPerSecond = 0;
+                return;
+            }
+            long bytesIn = current.getBytesReceived();
+            long bytesOut = current.getBytesSent();
+            long lines = current.lines().getReceivedCount();
+            bytesInPerSecond = (bytesIn - sampledBytesIn) / seconds;
+            bytesOutPerSecond = (bytesOut - sampledBytesOut) / seconds;
+            linesPerSecond = (lines - sampledLines) / seconds;
+            sampledBytesIn = bytesIn;
+            sampledBytesOut = bytesOut;
+            sampledLines = lines;
+        }
+
+        private PortStats stats() {
+            return new PortStats(this, connection);
+        }
+    }
+}
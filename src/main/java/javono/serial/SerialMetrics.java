@@ -0,0 +1,218 @@
+package javono.serial;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of one serial port, kept by {@link JavonoSerialThreaded} and
+ * published through JMX (see {@link SerialMetricsMXBean}), so jconsole or any JMX client can
+ * watch a slow or saturated device. Recording never allocates or locks.
+ * <p>
+ * There is one instance per port name for the life of the process: a connection that is closed
+ * and opened again, e.g. by {@link SerialHub}'s supervisor, keeps adding to the same counts.
+ * <p>
+ * Read latency is how long the reader takes from a read returning to every message in it being
+ * handed on; write latency is how long a message waits from being queued until it is written,
+ * including the wait for the device's credit.
+ */
+public class SerialMetrics implements SerialMetricsMXBean {
+
+    private static final ConcurrentHashMap<String, SerialMetrics> PORTS = new ConcurrentHashMap<>();
+
+    private final String portName;
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong lostFrames = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong opens = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicInteger writeQueueDepth = new AtomicInteger();
+    private final AtomicInteger writeQueuePeak = new AtomicInteger();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    private SerialMetrics(String portName) {
+        this.portName = portName;
+    }
+
+    /**
+     * Returns the metrics of a port, creating and registering them with JMX on first use.
+     */
+    public static SerialMetrics forPort(String portName) {
+        return PORTS.computeIfAbsent(portName, SerialMetrics::register);
+    }
+
+    /**
+     * Returns the metrics of every port opened in this process.
+     */
+    public static List<SerialMetrics> all() {
+        return new ArrayList<>(PORTS.values());
+    }
+
+    private static SerialMetrics register(String portName) {
+        SerialMetrics metrics = new SerialMetrics(portName);
+        try {
+            ObjectName name = new ObjectName("javono:type=SerialLink,port=" + ObjectName.quote(portName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+        } catch (JMException e) {
+            System.err.println("Serial I/O: metrics of " + portName + " are not available through JMX: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    void opened() {
+        if (opens.getAndIncrement() > 0) reconnects.incrementAndGet();
+    }
+
+    void bytesIn(int count) {
+        bytesIn.addAndGet(count);
+    }
+
+    void bytesOut(int count) {
+        bytesOut.addAndGet(count);
+    }
+
+    void frameIn() {
+        framesIn.incrementAndGet();
+    }
+
+    void framesOut(int count) {
+        framesOut.addAndGet(count);
+    }
+
+    void framesLost(long count) {
+        lostFrames.addAndGet(count);
+    }
+
+    void messageDropped() {
+        droppedMessages.incrementAndGet();
+    }
+
+    void writeQueueDepth(int depth) {
+        writeQueueDepth.set(depth);
+        writeQueuePeak.accumulateAndGet(depth, Math::max);
+    }
+
+    void readLatency(long nanos) {
+        readLatency.record(nanos);
+    }
+
+    void writeLatency(long nanos) {
+        writeLatency.record(nanos);
+    }
+
+    @Override
+    public String getPortName() {
+        return portName;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public long getFramesIn() {
+        return framesIn.get();
+    }
+
+    @Override
+    public long getFramesOut() {
+        return framesOut.get();
+    }
+
+    @Override
+    public int getWriteQueueDepth() {
+        return writeQueueDepth.get();
+    }
+
+    @Override
+    public int getWriteQueuePeak() {
+        return writeQueuePeak.get();
+    }
+
+    @Override
+    public long getLostFrames() {
+        return lostFrames.get();
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    @Override
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    @Override
+    public double getReadLatencyP50Micros() {
+        return readLatency.percentileMicros(0.50);
+    }
+
+    @Override
+    public double getReadLatencyP99Micros() {
+        return readLatency.percentileMicros(0.99);
+    }
+
+    @Override
+    public double getReadLatencyMaxMicros() {
+        return readLatency.getMaxMicros();
+    }
+
+    @Override
+    public double getWriteLatencyP50Micros() {
+        return writeLatency.percentileMicros(0.50);
+    }
+
+    @Override
+    public double getWriteLatencyP99Micros() {
+        return writeLatency.percentileMicros(0.99);
+    }
+
+    @Override
+    public double getWriteLatencyMaxMicros() {
+        return writeLatency.getMaxMicros();
+    }
+
+    /**
+     * Zeroes every count and histogram; the queue depth stays, since it is a current value.
+     */
+    @Override
+    public void reset() {
+        bytesIn.set(0);
+        bytesOut.set(0);
+        framesIn.set(0);
+        framesOut.set(0);
+        lostFrames.set(0);
+        droppedMessages.set(0);
+        reconnects.set(0);
+        writeQueuePeak.set(writeQueueDepth.get());
+        readLatency.reset();
+        writeLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-16s in %d B (%d frames)  out %d B (%d frames)  queue %d (peak %d)  lost %d  dropped %d  reconnects %d  "
+                        + "read p50 %.0f us p99 %.0f us max %.0f us  write p50 %.0f us p99 %.0f us max %.0f us",
+                portName, getBytesIn(), getFramesIn(), getBytesOut(), getFramesOut(), getWriteQueueDepth(), getWriteQueuePeak(),
+                getLostFrames(), getDroppedMessages(), getReconnects(),
+                getReadLatencyP50Micros(), getReadLatencyP99Micros(), getReadLatencyMaxMicros(),
+                getWriteLatencyP50Micros(), getWriteLatencyP99Micros(), getWriteLatencyMaxMicros());
+    }
+}
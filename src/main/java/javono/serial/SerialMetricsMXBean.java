@@ -0,0 +1,48 @@
+package javono.serial;
+
+/**
+ * The JMX view of a serial port's {@link SerialMetrics}, registered as
+ * javono:type=SerialLink,port="&lt;port&gt;". Counts run from the first time the port was opened
+ * in this process until {@link #reset()}.
+ */
+public interface SerialMetricsMXBean {
+
+    String getPortName();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    /** Lines or frames read, including the protocol's own. */
+    long getFramesIn();
+
+    /** Lines or frames written, including the protocol's own. */
+    long getFramesOut();
+
+    /** Messages waiting for credit to be sent. */
+    int getWriteQueueDepth();
+
+    int getWriteQueuePeak();
+
+    /** Frames from the device that were corrupt or missing. */
+    long getLostFrames();
+
+    /** Received messages thrown away because a consumer fell behind. */
+    long getDroppedMessages();
+
+    long getReconnects();
+
+    double getReadLatencyP50Micros();
+
+    double getReadLatencyP99Micros();
+
+    double getReadLatencyMaxMicros();
+
+    double getWriteLatencyP50Micros();
+
+    double getWriteLatencyP99Micros();
+
+    double getWriteLatencyMaxMicros();
+
+    void reset();
+}
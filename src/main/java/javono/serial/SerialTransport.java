@@ -0,0 +1,61 @@
+package javono.serial;
+
+import javono.config.SerialConfig;
+
+import java.io.IOException;
+
+/**
+ * The byte link under {@link JavonoSerialThreaded}: a real serial port, or a stand-in such as
+ * {@link LoopbackTransport} or the pseudo-terminal behind {@link FakeDevice#startPty()}.
+ * One thread reads while another writes.
+ */
+public interface SerialTransport {
+
+    /**
+     * Returns the port name, used in messages and thread names.
+     */
+    String getName();
+
+    /**
+     * Opens the link with the given UART settings.
+     *
+     * @param blockingReads true if {@link #read} may wait briefly for data, false if it must
+     *                      return at once
+     */
+    void open(SerialConfig config, boolean blockingReads) throws IOException;
+
+    /**
+     * Opens the link again after it failed. A real port that is gone looks for the same USB
+     * device under another name, since a board that resets may come back as e.g. /dev/ttyACM1
+     * instead of /dev/ttyACM0; {@link #getName()} then returns the new name.
+     */
+    default void reopen(SerialConfig config, boolean blockingReads) throws IOException {
+        close();
+        open(config, blockingReads);
+    }
+
+    /**
+     * Reads what has arrived into buffer. With blocking reads this waits up to about 100 ms for
+     * the first byte.
+     *
+     * @return the number of bytes read, 0 if none arrived, or -1 if the link failed or was closed
+     */
+    int read(byte[] buffer, int length);
+
+    /**
+     * Waits up to timeoutMs until {@link #read} may have data or the link has failed. A reader that
+     * opened the link without blocking reads, e.g. on a virtual thread, parks here instead of polling.
+     */
+    void awaitData(long timeoutMs) throws InterruptedException;
+
+    void write(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Changes the rate of an open link; stand-ins without a rate ignore it.
+     */
+    void setBaudRate(int baudRate);
+
+    boolean isOpen();
+
+    void close();
+}
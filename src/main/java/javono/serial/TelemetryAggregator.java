@@ -0,0 +1,148 @@
+package javono.serial;
+
+import javono.logger.LoggerFacade;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the loop timing snapshots a firmware built with javono.serial.telemetryIntervalMs
+ * sends, and prints iteration time percentiles per task. The connection prints the totals when
+ * it is closed.
+ * <p>
+ * Each snapshot is a line
+ * {@code Javono_telemetry <name> <iterations> <overruns> <max_jitter_us> <max_us> <stack_used> <stack_size> <free_heap> <min_free_heap> [<bucket>:<count>...]}
+ * where the counts cover the time since the previous snapshot and bucket i holds iterations
+ * that took [2^i, 2^(i+1)) microseconds.
+ */
+public class TelemetryAggregator {
+
+    static final String PREFIX = "Javono_telemetry ";
+    private static final int BUCKETS = 20;
+
+    private final Map<String, TaskStats> tasks = new LinkedHashMap<>();
+    private volatile boolean printSnapshots = false;
+
+    /**
+     * Parses a telemetry line and adds it to the totals of its task.
+     *
+     * @return false if the line is not a telemetry snapshot
+     */
+    public boolean accept(String line) {
+        if (!line.startsWith(PREFIX)) return false;
+        String[] fields = line.substring(PREFIX.length()).trim().split(" ");
+        if (fields.length < 9) return false;
+
+        TaskStats stats;
+        try {
+            synchronized (tasks) {
+                stats = tasks.computeIfAbsent(fields[0], TaskStats::new);
+                stats.add(fields);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Serial I/O: malformed telemetry: " + line);
+            return true;
+        }
+        if (printSnapshots) {
+            LoggerFacade.getInstance().info(stats.toString());
+        }
+        return true;
+    }
+
+    /**
+     * Turns on a line for every snapshot as it arrives, printed on the reader thread. Off by
+     * default; the totals are collected either way.
+     */
+    public void setPrintSnapshots(boolean printSnapshots) {
+        this.printSnapshots = printSnapshots;
+    }
+
+    /**
+     * Returns true if no snapshot has arrived yet.
+     */
+    public boolean isEmpty() {
+        synchronized (tasks) {
+            return tasks.isEmpty();
+        }
+    }
+
+    /**
+     * Prints the totals of every task since the connection was opened.
+     */
+    public void printSummary() {
+        synchronized (tasks) {
+            if (tasks.isEmpty()) {
+                LoggerFacade.getInstance().info("No loop telemetry received; build with javono.serial.telemetryIntervalMs set.");
+                return;
+            }
+            LoggerFacade.getInstance().info("----- Javono Loop Telemetry -----");
+            tasks.values().forEach(stats -> LoggerFacade.getInstance().info(stats.toString()));
+            LoggerFacade.getInstance().info("---------------------------------");
+        }
+    }
+
+    private static class TaskStats {
+        private final String name;
+        private final long[] histogram = new long[BUCKETS];
+        private long iterations;
+        private long overruns;
+        private long maxJitterUs;
+        private long maxUs;
+        private long stackUsed;
+        private long stackSize;
+        private long freeHeap;
+        private long minFreeHeap;
+
+        private TaskStats(String name) {
+            this.name = name;
+        }
+
+        private void add(String[] fields) {
+            iterations += Long.parseLong(fields[1]);
+            overruns += Long.parseLong(fields[2]);
+            maxJitterUs = Math.max(maxJitterUs, Long.parseLong(fields[3]));
+            maxUs = Math.max(maxUs, Long.parseLong(fields[4]));
+            stackUsed = Math.max(stackUsed, Long.parseLong(fields[5]));
+            stackSize = Long.parseLong(fields[6]);
+            freeHeap = Long.parseLong(fields[7]);
+            minFreeHeap = Long.parseLong(fields[8]);
+            for (int i = 9; i < fields.length; i++) {
+                int colon = fields[i].indexOf(':');
+                if (colon < 0) continue;
+                int bucket = Integer.parseInt(fields[i].substring(0, colon));
+                if (bucket >= 0 && bucket < BUCKETS) {
+                    histogram[bucket] += Long.parseLong(fields[i].substring(colon + 1));
+                }
+            }
+        }
+
+        // Interpolates inside the power-of-two bucket, so the result is an estimate within a factor of two
+        private double percentile(double fraction) {
+            long total = 0;
+            for (long count : histogram) total += count;
+            if (total == 0) return -1;
+
+            double rank = fraction * total;
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                if (histogram[bucket] == 0) continue;
+                if (seen + histogram[bucket] >= rank) {
+                    double low = bucket == 0 ? 0 : 1L << bucket;
+                    double high = 1L << (bucket + 1);
+                    double estimate = low + (high - low) * (rank - seen) / histogram[bucket];
+                    return maxUs > 0 ? Math.min(estimate, maxUs) : estimate;
+                }
+                seen += histogram[bucket];
+            }
+            return maxUs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[telemetry] %-12s %8d it  p50 %7.0f us  p99 %7.0f us  p99.9 %7.0f us  max %7d us"
+                            + "  overruns %d  jitter %d us  stack %d/%d  heap %d (min %d)",
+                    name, iterations, percentile(0.50), percentile(0.99), percentile(0.999), maxUs,
+                    overruns, maxJitterUs, stackUsed, stackSize, freeHeap, minFreeHeap);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package javono.serial;
+
+import java.util.Arrays;
+
+/**
+ * The writer thread's batch: messages are encoded straight into one growable array, which is
+ * handed to the port as it is. Once it has grown to the largest batch, sending allocates nothing.
+ */
+final class WriteBuffer {
+
+    private byte[] bytes;
+    private int size = 0;
+    // Scratch space for a frame before COBS encoding
+    private byte[] raw = new byte[256];
+
+    WriteBuffer(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    void write(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    void write(byte[] data) {
+        write(data, 0, data.length);
+    }
+
+    void write(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Writes a non-negative number as ASCII digits.
+     */
+    void writeDecimal(int value) {
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) digits++;
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * Writes a COBS-encoded {@link Frame} and its delimiter. REQUEST frames carry requestId in
+     * front of the payload.
+     */
+    void writeFrame(int type, int sequence, int requestId, byte[] payload) {
+        int header = type == Frame.TYPE_REQUEST ? 4 : 2;
+        int rawLength = header + payload.length + 2;
+        if (raw.length < rawLength) raw = new byte[Math.max(rawLength, raw.length * 2)];
+        raw[0] = (byte) type;
+        raw[1] = (byte) sequence;
+        if (type == Frame.TYPE_REQUEST) {
+            raw[2] = (byte) requestId;
+            raw[3] = (byte) (requestId >> 8);
+        }
+        System.arraycopy(payload, 0, raw, header, payload.length);
+        int crc = Crc16.update(Crc16.INITIAL, raw, 0, rawLength - 2);
+        raw[rawLength - 2] = (byte) crc;
+        raw[rawLength - 1] = (byte) (crc >> 8);
+        Cobs.encode(raw, 0, rawLength, this);
+        write(0);
+    }
+
+    // Leaves room for a byte that is filled in later, e.g. a COBS code
+    int reserve() {
+        ensureCapacity(1);
+        return size++;
+    }
+
+    void set(int position, int b) {
+        bytes[position] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+        }
+    }
+}
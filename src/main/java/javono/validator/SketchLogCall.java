@@ -0,0 +1,47 @@
+package javono.validator;
+
+import java.util.List;
+
+/**
+ * A Log.info/warn/error call the generator emits as a Javono_log() call in the C function of
+ * the sketch method that makes it.
+ */
+public class SketchLogCall {
+
+    private final String function;
+    private final int messageId;
+    private final List<Integer> arguments;
+
+    public SketchLogCall(String function, int messageId, List<Integer> arguments) {
+        this.function = function;
+        this.messageId = messageId;
+        this.arguments = List.copyOf(arguments);
+    }
+
+    /**
+     * Returns the C function the call is emitted in.
+     */
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the ID of the call's {@link SketchLogMessage}.
+     */
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public List<Integer> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return "SketchLogCall{" +
+                "function='" + function + '\'' +
+                ", messageId=" + messageId +
+                ", arguments=" + arguments +
+                '}';
+    }
+}
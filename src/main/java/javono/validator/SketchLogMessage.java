@@ -0,0 +1,48 @@
+package javono.validator;
+
+/**
+ * A Log.info/warn/error format string from the sketch, with the ID the device sends instead of it.
+ */
+public class SketchLogMessage {
+
+    private final int id;
+    private final String level;
+    private final String format;
+    private final int argumentCount;
+
+    public SketchLogMessage(int id, String level, String format, int argumentCount) {
+        this.id = id;
+        this.level = level;
+        this.format = format;
+        this.argumentCount = argumentCount;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the Log method the format was passed to: info, warn or error.
+     */
+    public String getLevel() {
+        return level;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SketchLogMessage{" +
+                "id=" + id +
+                ", level='" + level + '\'' +
+                ", format='" + format + '\'' +
+                ", argumentCount=" + argumentCount +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+package javono.validator;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Facts about the validated @JavonoEmbeddedSketch class that the project generator needs.
+ * Method names are already mapped to the C function names the generator emits
+ * (@JavonoEmbeddedInit becomes setup, @JavonoEmbeddedLoop becomes loop).
+ */
+public class SketchModel {
+
+    private final String className;
+    private final Map<String, Set<String>> callGraph;
+    private final List<SketchTask> tasks;
+    private final Set<String> libraryClasses;
+    private final List<SketchLogMessage> logMessages;
+    private final List<SketchLogCall> logCalls;
+
+    public SketchModel(String className, Map<String, Set<String>> callGraph, List<SketchTask> tasks, Set<String> libraryClasses,
+                       List<SketchLogMessage> logMessages, List<SketchLogCall> logCalls) {
+        this.className = className;
+        this.callGraph = Collections.unmodifiableMap(new LinkedHashMap<>(callGraph));
+        this.tasks = List.copyOf(tasks);
+        this.libraryClasses = Collections.unmodifiableSet(new TreeSet<>(libraryClasses));
+        this.logMessages = List.copyOf(logMessages);
+        this.logCalls = List.copyOf(logCalls);
+    }
+
+    public static SketchModel empty() {
+        SketchTask loop = new SketchTask("loop", "loop", 0, SketchTask.DEFAULT_STACK_SIZE, SketchTask.DEFAULT_PRIORITY, SketchTask.NO_AFFINITY);
+        return new SketchModel("Class not found.", Collections.emptyMap(), List.of(loop), Collections.emptySet(), List.of(), List.of());
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the calls between sketch methods, keyed by caller.
+     * Recursion is rejected by the validator, so this graph is always acyclic.
+     */
+    public Map<String, Set<String>> getCallGraph() {
+        return callGraph;
+    }
+
+    /**
+     * Returns the loop tasks to create after setup, starting with the @JavonoEmbeddedLoop task
+     * and followed by every @JavonoEmbeddedTask.
+     */
+    public List<SketchTask> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Returns the simple names of the javono.lib classes the sketch uses, e.g. GPIO.
+     */
+    public Set<String> getLibraryClasses() {
+        return libraryClasses;
+    }
+
+    /**
+     * Returns the distinct Log format strings of the sketch, ordered by ID.
+     */
+    public List<SketchLogMessage> getLogMessages() {
+        return logMessages;
+    }
+
+    /**
+     * Returns the Log calls of function in source order, as the generator emits them.
+     */
+    public List<SketchLogCall> getLogCalls(String function) {
+        return logCalls.stream().filter(call -> call.getFunction().equals(function)).toList();
+    }
+
+    public List<SketchLogCall> getLogCalls() {
+        return logCalls;
+    }
+
+    @Override
+    public String toString() {
+        return "SketchModel{" +
+                "className='" + className + '\'' +
+                ", callGraph=" + callGraph +
+                ", tasks=" + tasks +
+                ", libraryClasses=" + libraryClasses +
+                ", logMessages=" + logMessages +
+                ", logCalls=" + logCalls +
+                '}';
+    }
+}
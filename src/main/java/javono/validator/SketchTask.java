@@ -0,0 +1,75 @@
+package javono.validator;
+
+/**
+ * A FreeRTOS task the generator creates to run one sketch loop method.
+ */
+public class SketchTask {
+
+    public static final int DEFAULT_STACK_SIZE = 4096;
+    public static final int DEFAULT_PRIORITY = 1;
+    public static final int NO_AFFINITY = -1;
+
+    private final String name;
+    private final String function;
+    private final int periodMs;
+    private final int stackSize;
+    private final int priority;
+    private final int core;
+
+    public SketchTask(String name, String function, int periodMs, int stackSize, int priority, int core) {
+        this.name = name;
+        this.function = function;
+        this.periodMs = periodMs;
+        this.stackSize = stackSize;
+        this.priority = priority;
+        this.core = core;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the C function the task calls on every iteration.
+     */
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the time between iteration starts in milliseconds, or 0 for a free-running loop.
+     */
+    public int getPeriodMs() {
+        return periodMs;
+    }
+
+    /**
+     * Returns the task stack size in bytes.
+     */
+    public int getStackSize() {
+        return stackSize;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the core the task is pinned to, or NO_AFFINITY.
+     */
+    public int getCore() {
+        return core;
+    }
+
+    @Override
+    public String toString() {
+        return "SketchTask{" +
+                "name='" + name + '\'' +
+                ", function='" + function + '\'' +
+                ", periodMs=" + periodMs +
+                ", stackSize=" + stackSize +
+                ", priority=" + priority +
+                ", core=" + core +
+                '}';
+    }
+}
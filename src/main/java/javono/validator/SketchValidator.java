@@ -2,17 +2,28 @@ package javono.validator;
 
 import com.github.javaparser.*;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.AssignExpr;
 import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MemberValuePair;
 import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.UnaryExpr;
 import com.github.javaparser.ast.nodeTypes.NodeWithName;
 import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
 import javono.annotations.JavonoEmbeddedUserMethod;
 import javono.annotations.JavonoEmbeddedLoop;
 import javono.annotations.JavonoEmbeddedInit;
 import javono.annotations.JavonoEmbeddedSketch;
+import javono.annotations.JavonoEmbeddedTask;
 import javono.logger.LoggerFacade;
 
 import java.io.File;
@@ -27,14 +38,21 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 class SketchValidator {
 
     private static final SketchValidator INSTANCE = new SketchValidator();
+    private static final Set<String> LOG_LEVELS = Set.of("info", "warn", "error");
+    private static final Pattern LOG_PLACEHOLDER = Pattern.compile("%.?");
+    // JAVONO_LOG_MAX_ARGS in the generated Javono_log.h
+    private static final int MAX_LOG_ARGUMENTS = 8;
     private final Path userProjectSrcDir = detectUniversalJavaSourceDir();
     private int classCount = 0;
     private String className = "Class not found.";
+    private SketchModel sketchModel = SketchModel.empty();
 
     // Create a shared parser instance configured for Java 21
     private static final JavaParser parser;
@@ -89,6 +107,112 @@ class SketchValidator {
         }
     }
 
+    // @JavonoEmbeddedTask methods run in their own FreeRTOS task, so nothing may call them directly
+    private static void validateTaskMethods(ClassOrInterfaceDeclaration clazz) {
+        Set<String> taskMethodNames = clazz.getMethods().stream()
+                .filter(m -> m.isAnnotationPresent(JavonoEmbeddedTask.class))
+                .map(m -> m.getNameAsString())
+                .collect(Collectors.toSet());
+        Set<String> entryMethodNames = clazz.getMethods().stream()
+                .filter(m -> m.isAnnotationPresent(JavonoEmbeddedInit.class) || m.isAnnotationPresent(JavonoEmbeddedLoop.class))
+                .map(m -> m.getNameAsString())
+                .collect(Collectors.toSet());
+
+        clazz.getMethods().forEach(method -> method.findAll(MethodCallExpr.class).forEach(call -> {
+            if (call.getScope().isPresent() && !call.getScope().get().isThisExpr()) return;
+
+            if (taskMethodNames.contains(call.getNameAsString())) {
+                System.err.println("[Javono] @JavonoEmbeddedTask " + call.getNameAsString() + " is called from " + method.getNameAsString() + ".\n" + "[Javono] Task methods run on their own; move shared work into a @JavonoEmbeddedUserMethod.");
+                System.exit(1);
+            }
+            if (method.isAnnotationPresent(JavonoEmbeddedTask.class) && entryMethodNames.contains(call.getNameAsString())) {
+                System.err.println("[Javono] @JavonoEmbeddedTask " + method.getNameAsString() + " must not call @JavonoEmbeddedInit or @JavonoEmbeddedLoop.");
+                System.exit(1);
+            }
+        }));
+    }
+
+    /**
+     * Rejects fields that one loop task writes while another task reads or writes them.
+     * Setup is left out because it finishes before any loop task starts.
+     * Calling a method on a javono.lib field counts as a write.
+     */
+    private static void detectSharedFieldAccess(ClassOrInterfaceDeclaration clazz) {
+        Set<String> fieldNames = clazz.getFields().stream()
+                .map(FieldDeclaration::getVariables)
+                .flatMap(List::stream)
+                .map(VariableDeclarator::getNameAsString)
+                .collect(Collectors.toSet());
+        if (fieldNames.isEmpty()) return;
+
+        Map<String, Set<String>> writers = new TreeMap<>();
+        Map<String, Set<String>> accessors = new TreeMap<>();
+
+        clazz.getMethods().stream()
+                .filter(m -> m.isAnnotationPresent(JavonoEmbeddedLoop.class) || m.isAnnotationPresent(JavonoEmbeddedTask.class))
+                .forEach(entry -> {
+                    String task = entry.getNameAsString();
+                    for (MethodDeclaration method : reachableMethods(clazz, entry)) {
+                        Set<String> localNames = new HashSet<>();
+                        method.getParameters().forEach(parameter -> localNames.add(parameter.getNameAsString()));
+                        method.findAll(VariableDeclarator.class).forEach(variable -> localNames.add(variable.getNameAsString()));
+
+                        method.findAll(NameExpr.class).stream()
+                                .filter(name -> fieldNames.contains(name.getNameAsString()) && !localNames.contains(name.getNameAsString()))
+                                .forEach(name -> recordFieldAccess(name, name.getNameAsString(), task, writers, accessors));
+                        method.findAll(FieldAccessExpr.class).stream()
+                                .filter(access -> access.getScope().isThisExpr() && fieldNames.contains(access.getNameAsString()))
+                                .forEach(access -> recordFieldAccess(access, access.getNameAsString(), task, writers, accessors));
+                    }
+                });
+
+        writers.forEach((field, writingTasks) -> {
+            Set<String> tasks = accessors.get(field);
+            if (tasks.size() > 1) {
+                System.err.println("[Javono] Field '" + field + "' is written by " + String.join(", ", writingTasks) + " and used by " + String.join(", ", tasks) + ".\n" + "[Javono] Tasks run concurrently, possibly on different cores; give each task its own fields.");
+                System.exit(1);
+            }
+        });
+    }
+
+    private static void recordFieldAccess(Expression access, String field, String task, Map<String, Set<String>> writers, Map<String, Set<String>> accessors) {
+        accessors.computeIfAbsent(field, k -> new TreeSet<>()).add(task);
+        if (isWrite(access)) {
+            writers.computeIfAbsent(field, k -> new TreeSet<>()).add(task);
+        }
+    }
+
+    private static boolean isWrite(Expression access) {
+        Optional<Node> parent = access.getParentNode();
+        if (parent.isEmpty()) return false;
+        Node node = parent.get();
+        if (node instanceof AssignExpr assign) return assign.getTarget() == access;
+        if (node instanceof UnaryExpr unary) {
+            UnaryExpr.Operator operator = unary.getOperator();
+            return operator == UnaryExpr.Operator.PREFIX_INCREMENT || operator == UnaryExpr.Operator.PREFIX_DECREMENT
+                    || operator == UnaryExpr.Operator.POSTFIX_INCREMENT || operator == UnaryExpr.Operator.POSTFIX_DECREMENT;
+        }
+        if (node instanceof MethodCallExpr call) {
+            return call.getScope().filter(scope -> scope == access).isPresent();
+        }
+        return false;
+    }
+
+    // The entry method plus every sketch method it calls, directly or indirectly
+    private static Set<MethodDeclaration> reachableMethods(ClassOrInterfaceDeclaration clazz, MethodDeclaration entry) {
+        Set<MethodDeclaration> reached = new LinkedHashSet<>();
+        Deque<MethodDeclaration> pending = new ArrayDeque<>();
+        pending.push(entry);
+        while (!pending.isEmpty()) {
+            MethodDeclaration method = pending.pop();
+            if (!reached.add(method)) continue;
+            method.findAll(MethodCallExpr.class).stream()
+                    .filter(call -> call.getScope().isEmpty() || call.getScope().get().isThisExpr())
+                    .forEach(call -> clazz.getMethodsByName(call.getNameAsString()).forEach(pending::push));
+        }
+        return reached;
+    }
+
     // DFS to detect cycle
     private static boolean detectCycleDFS(String method, Map<String, Set<String>> graph, Set<String> visited, Set<String> stack) {
         if (stack.contains(method)) return true;
@@ -409,7 +533,7 @@ class SketchValidator {
                         List<String> customMethodNames = new ArrayList<>();
                         clazz.getMethods()
                                 .forEach(method -> {
-                                    if (!method.isAnnotationPresent(JavonoEmbeddedInit.class) && !method.isAnnotationPresent(JavonoEmbeddedLoop.class) && !method.isAnnotationPresent(JavonoEmbeddedUserMethod.class)) {
+                                    if (!method.isAnnotationPresent(JavonoEmbeddedInit.class) && !method.isAnnotationPresent(JavonoEmbeddedLoop.class) && !method.isAnnotationPresent(JavonoEmbeddedUserMethod.class) && !method.isAnnotationPresent(JavonoEmbeddedTask.class)) {
                                         isNotAnnotatedCustomMethodFound.set(true);
                                         customMethodName.set(method.getNameAsString());
                                         customMethodNames.add(method.getNameAsString());
@@ -469,6 +593,8 @@ class SketchValidator {
                                 System.exit(1);
                             }
                             detectCustomMethodRecursion(clazz, file);
+                            validateTaskMethods(clazz);
+                            detectSharedFieldAccess(clazz);
 
                         }
 
@@ -478,6 +604,7 @@ class SketchValidator {
                             System.exit(1);
                         } else if (classCount == 1) {
                             this.className = clazz.getNameAsString();
+                            this.sketchModel = buildSketchModel(clazz);
                         }
 
                     }
@@ -492,6 +619,209 @@ class SketchValidator {
         }
     }
 
+    private static SketchModel buildSketchModel(ClassOrInterfaceDeclaration clazz) {
+        Map<String, Set<String>> callGraph = new LinkedHashMap<>();
+        Set<String> localMethodNames = clazz.getMethods()
+                .stream()
+                .map(m -> m.getNameAsString())
+                .collect(Collectors.toSet());
+
+        clazz.getMethods().forEach(method -> {
+            Set<String> callees = new LinkedHashSet<>();
+            method.findAll(MethodCallExpr.class).forEach(call -> {
+                boolean isLocalCall = call.getScope().isEmpty() || call.getScope().get().isThisExpr();
+                if (isLocalCall && localMethodNames.contains(call.getNameAsString())) {
+                    clazz.getMethodsByName(call.getNameAsString())
+                            .forEach(callee -> callees.add(cFunctionName(callee)));
+                }
+            });
+            callGraph.put(cFunctionName(method), callees);
+        });
+
+        List<SketchTask> tasks = new ArrayList<>();
+        clazz.getMethods().stream()
+                .filter(method -> method.isAnnotationPresent(JavonoEmbeddedLoop.class))
+                .findFirst()
+                .ifPresent(loop -> tasks.add(new SketchTask("loop", "loop", periodMs(loop, JavonoEmbeddedLoop.class), SketchTask.DEFAULT_STACK_SIZE, SketchTask.DEFAULT_PRIORITY, SketchTask.NO_AFFINITY)));
+
+        clazz.getMethods().stream()
+                .filter(method -> method.isAnnotationPresent(JavonoEmbeddedTask.class))
+                .forEach(task -> tasks.add(new SketchTask(task.getNameAsString(), task.getNameAsString(),
+                        periodMs(task, JavonoEmbeddedTask.class),
+                        intAnnotationMember(task, JavonoEmbeddedTask.class, "stackSize", SketchTask.DEFAULT_STACK_SIZE),
+                        intAnnotationMember(task, JavonoEmbeddedTask.class, "priority", SketchTask.DEFAULT_PRIORITY),
+                        intAnnotationMember(task, JavonoEmbeddedTask.class, "core", SketchTask.NO_AFFINITY))));
+
+        List<SketchLogMessage> logMessages = logMessages(clazz);
+        return new SketchModel(clazz.getNameAsString(), callGraph, tasks, libraryClasses(clazz), logMessages, logCalls(clazz, logMessages));
+    }
+
+    // Gives every distinct Log.info/warn/error format an ID; the device sends the ID instead of the text
+    private static List<SketchLogMessage> logMessages(ClassOrInterfaceDeclaration clazz) {
+        Map<String, SketchLogMessage> messages = new LinkedHashMap<>();
+        clazz.findAll(MethodCallExpr.class).forEach(call -> {
+            boolean isLogCall = call.getScope().filter(Expression::isNameExpr)
+                    .map(scope -> scope.asNameExpr().getNameAsString().equals("Log"))
+                    .orElse(false);
+            if (!isLogCall || !LOG_LEVELS.contains(call.getNameAsString()) || call.getArguments().isEmpty()) return;
+
+            Expression format = call.getArgument(0);
+            if (!format.isStringLiteralExpr()) {
+                LoggerFacade.getInstance().error("Log." + call.getNameAsString() + " needs a string literal format, found " + format);
+                System.exit(1);
+            }
+            String text = format.asStringLiteralExpr().asString();
+            int placeholders = 0;
+            Matcher matcher = LOG_PLACEHOLDER.matcher(text);
+            while (matcher.find()) {
+                String placeholder = matcher.group();
+                if (placeholder.equals("%%")) continue;
+                if (!placeholder.equals("%d") && !placeholder.equals("%x") && !placeholder.equals("%X")) {
+                    LoggerFacade.getInstance().error("Log format \"" + text + "\" uses " + placeholder + "; only %d, %x, %X and %% are supported.");
+                    System.exit(1);
+                }
+                placeholders++;
+            }
+            if (placeholders > MAX_LOG_ARGUMENTS) {
+                LoggerFacade.getInstance().error("Log format \"" + text + "\" has more than " + MAX_LOG_ARGUMENTS + " placeholders.");
+                System.exit(1);
+            }
+            if (placeholders != call.getArguments().size() - 1) {
+                LoggerFacade.getInstance().error("Log format \"" + text + "\" has " + placeholders + " placeholders but " + (call.getArguments().size() - 1) + " arguments.");
+                System.exit(1);
+            }
+            messages.computeIfAbsent(call.getNameAsString() + ":" + text,
+                    key -> new SketchLogMessage(messages.size(), call.getNameAsString(), text, call.getArguments().size() - 1));
+        });
+        return new ArrayList<>(messages.values());
+    }
+
+    /**
+     * Collects the Log calls the generator can emit. Sketch method bodies are not translated to C
+     * yet, so only a call that is a statement of its own directly in the body of the init, loop or
+     * a task method, and whose arguments are integer literals, is sent by the device; the others
+     * are reported.
+     */
+    private static List<SketchLogCall> logCalls(ClassOrInterfaceDeclaration clazz, List<SketchLogMessage> messages) {
+        List<SketchLogCall> calls = new ArrayList<>();
+        for (MethodDeclaration method : clazz.getMethods()) {
+            boolean generated = method.isAnnotationPresent(JavonoEmbeddedInit.class)
+                    || method.isAnnotationPresent(JavonoEmbeddedLoop.class)
+                    || method.isAnnotationPresent(JavonoEmbeddedTask.class);
+            // By identity: nodes compare by content, and the same call may also appear nested
+            Set<MethodCallExpr> statements = Collections.newSetFromMap(new IdentityHashMap<>());
+            method.getBody().ifPresent(body -> body.getStatements().forEach(statement -> {
+                if (statement.isExpressionStmt() && statement.asExpressionStmt().getExpression().isMethodCallExpr()) {
+                    statements.add(statement.asExpressionStmt().getExpression().asMethodCallExpr());
+                }
+            }));
+
+            for (MethodCallExpr call : method.findAll(MethodCallExpr.class)) {
+                boolean isLogCall = call.getScope().filter(Expression::isNameExpr)
+                        .map(scope -> scope.asNameExpr().getNameAsString().equals("Log"))
+                        .orElse(false);
+                if (!isLogCall || !LOG_LEVELS.contains(call.getNameAsString()) || call.getArguments().isEmpty()) continue;
+
+                String where = "Log." + call.getNameAsString() + " in " + method.getNameAsString()
+                        + call.getBegin().map(position -> " (line " + position.line + ")").orElse("");
+                if (!generated) {
+                    LoggerFacade.getInstance().warn(where + " is not sent by the device: only init, loop and task methods are generated.");
+                    continue;
+                }
+                if (!statements.contains(call)) {
+                    LoggerFacade.getInstance().warn(where + " is not sent by the device: only Log calls directly in the method body are generated.");
+                    continue;
+                }
+                List<Integer> arguments = new ArrayList<>();
+                for (Expression argument : call.getArguments().subList(1, call.getArguments().size())) {
+                    Integer value = integerLiteral(argument);
+                    if (value == null) break;
+                    arguments.add(value);
+                }
+                if (arguments.size() != call.getArguments().size() - 1) {
+                    LoggerFacade.getInstance().warn(where + " is not sent by the device: only integer literal arguments are generated.");
+                    continue;
+                }
+                String format = call.getArgument(0).asStringLiteralExpr().asString();
+                messages.stream()
+                        .filter(message -> message.getLevel().equals(call.getNameAsString()) && message.getFormat().equals(format))
+                        .findFirst()
+                        .ifPresent(message -> calls.add(new SketchLogCall(cFunctionName(method), message.getId(), arguments)));
+            }
+        }
+        return calls;
+    }
+
+    // The value of an int literal, optionally negated, or null for any other expression
+    private static Integer integerLiteral(Expression expression) {
+        int sign = 1;
+        if (expression.isUnaryExpr() && expression.asUnaryExpr().getOperator() == UnaryExpr.Operator.MINUS) {
+            sign = -1;
+            expression = expression.asUnaryExpr().getExpression();
+        }
+        if (!expression.isIntegerLiteralExpr()) return null;
+        // 2147483648 is only valid negated, and comes back as a long
+        return (int) (sign * expression.asIntegerLiteralExpr().asNumber().longValue());
+    }
+
+    // javono.lib classes used as a field or variable type, or as the scope of a static call
+    private static Set<String> libraryClasses(ClassOrInterfaceDeclaration clazz) {
+        Set<String> candidates = new LinkedHashSet<>();
+        clazz.findAll(ClassOrInterfaceType.class).forEach(type -> candidates.add(type.getNameAsString()));
+        clazz.findAll(MethodCallExpr.class).forEach(call -> call.getScope()
+                .filter(Expression::isNameExpr)
+                .ifPresent(scope -> candidates.add(scope.asNameExpr().getNameAsString())));
+
+        Set<String> libraryClasses = new LinkedHashSet<>();
+        for (String candidate : candidates) {
+            if (isAllowedJavonoType(candidate)) libraryClasses.add(candidate);
+        }
+        return libraryClasses;
+    }
+
+    // The annotation processor already checked that at most one of periodMs and rateHz is set,
+    // and that rateHz divides 1000
+    private static int periodMs(MethodDeclaration method, Class<? extends Annotation> annotationClass) {
+        int periodMs = intAnnotationMember(method, annotationClass, "periodMs", 0);
+        int rateHz = intAnnotationMember(method, annotationClass, "rateHz", 0);
+        if (periodMs == 0 && rateHz > 0) {
+            periodMs = 1000 / rateHz;
+        }
+        return periodMs;
+    }
+
+    private static int intAnnotationMember(MethodDeclaration method, Class<? extends Annotation> annotationClass, String member, int defaultValue) {
+        Optional<AnnotationExpr> annotation = method.getAnnotationByClass(annotationClass);
+        if (annotation.isEmpty() || !annotation.get().isNormalAnnotationExpr()) return defaultValue;
+
+        for (MemberValuePair pair : annotation.get().asNormalAnnotationExpr().getPairs()) {
+            if (!pair.getNameAsString().equals(member)) continue;
+            Expression value = pair.getValue();
+            int sign = 1;
+            if (value.isUnaryExpr() && value.asUnaryExpr().getOperator() == UnaryExpr.Operator.MINUS) {
+                sign = -1;
+                value = value.asUnaryExpr().getExpression();
+            }
+            if (!value.isIntegerLiteralExpr()) {
+                LoggerFacade.getInstance().error("@" + annotationClass.getSimpleName() + " " + member + " must be an integer literal in " + method.getNameAsString());
+                System.exit(1);
+            }
+            return sign * value.asIntegerLiteralExpr().asNumber().intValue();
+        }
+        return defaultValue;
+    }
+
+    // Name under which the generator emits a sketch method in main.c
+    private static String cFunctionName(MethodDeclaration method) {
+        if (method.isAnnotationPresent(JavonoEmbeddedInit.class)) return "setup";
+        if (method.isAnnotationPresent(JavonoEmbeddedLoop.class)) return "loop";
+        return method.getNameAsString();
+    }
+
+    public SketchModel getSketchModel() {
+        return sketchModel;
+    }
+
     private static boolean isAllowedJavonoType(String typeName) {
         try {
             Set<String> libClasses = new HashSet<>();
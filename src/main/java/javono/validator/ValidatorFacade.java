@@ -20,5 +20,9 @@ public class ValidatorFacade {
         sketchValidator.validateProject();
     }
 
+    public SketchModel getSketchModel() {
+        return sketchValidator.getSketchModel();
+    }
+
 
 }